@@ -21,6 +21,7 @@ public class DemoApplication {
 		configuration.addAllowedOriginPattern("*");
 		configuration.addAllowedHeader("*");
 		configuration.addAllowedMethod("*");
+		configuration.addExposedHeader("X-Next-Cursor");
 		configuration.setMaxAge(3600L);
 		
 		UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,23 @@
+package com.example.demo.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.CertificateJobItem;
+
+public interface CertificateJobItemRepository extends JpaRepository<CertificateJobItem, Long> {
+
+    @Query("select i.status, count(i) from CertificateJobItem i where i.jobId = :jobId group by i.status")
+    List<Object[]> countByStatus(@Param("jobId") UUID jobId);
+
+    @Modifying
+    @Transactional
+    @Query("update CertificateJobItem i set i.status = :status, i.message = :message where i.id = :id")
+    void updateStatus(@Param("id") Long id, @Param("status") String status, @Param("message") String message);
+}
@@ -0,0 +1,10 @@
+package com.example.demo.Repository;
+
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.demo.model.CertificateJob;
+
+public interface CertificateJobRepository extends JpaRepository<CertificateJob, UUID> {
+}
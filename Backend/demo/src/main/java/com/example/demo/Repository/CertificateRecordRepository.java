@@ -0,0 +1,47 @@
+package com.example.demo.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.CertificateRecord;
+
+public interface CertificateRecordRepository extends JpaRepository<CertificateRecord, Long> {
+    List<CertificateRecord> findByUserIdInAndExamIdIn(Collection<Long> userIds, Collection<UUID> examIds);
+
+    List<CertificateRecord> findByExamIdAndUserIdIn(UUID examId, Collection<Long> userIds);
+
+    Optional<CertificateRecord> findByUserIdAndExamId(Long userId, UUID examId);
+
+    List<CertificateRecord> findByUserId(Long userId);
+
+    // Keyset pages for the certificate index: pass the last id seen (0 for the first page)
+    List<CertificateRecord> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    List<CertificateRecord> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long afterId, Pageable pageable);
+
+    List<CertificateRecord> findByExamIdAndIdGreaterThanOrderByIdAsc(UUID examId, Long afterId, Pageable pageable);
+
+    // Keys as produced by CertificateTemplateService.pathKey
+    List<CertificateRecord> findByStudentKeyAndIdGreaterThanOrderByIdAsc(String studentKey, Long afterId, Pageable pageable);
+
+    List<CertificateRecord> findBySubjectKeyAndIdGreaterThanOrderByIdAsc(String subjectKey, Long afterId, Pageable pageable);
+
+    List<CertificateRecord> findByGeneratedAtBetweenAndIdGreaterThanOrderByIdAsc(
+            LocalDateTime from, LocalDateTime to, Long afterId, Pageable pageable);
+
+    // Only if the certificate was not regenerated with different content in the meantime
+    @Modifying
+    @Transactional
+    @Query("update CertificateRecord r set r.stored = true where r.id = :id and r.fingerprint = :fingerprint")
+    int markStored(@Param("id") Long id, @Param("fingerprint") String fingerprint);
+}
@@ -1,9 +1,24 @@
 package com.example.demo.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.CertificateTemplate;
 
 public interface CertificateTemplateRepository extends JpaRepository<CertificateTemplate, Long>{
 
+    Optional<CertificateTemplate> findFirstByName(String name);
+
+    // Change check that does not load the template source or its assets
+    @Query("select t.updatedAt from CertificateTemplate t where t.name = :name")
+    List<LocalDateTime> findUpdatedAtByName(@Param("name") String name);
+
+    @Query("select t.name from CertificateTemplate t where t.html is not null order by t.name")
+    List<String> findUploadedNames();
+
 }
@@ -0,0 +1,14 @@
+package com.example.demo.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.demo.model.UploadSession;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime time);
+}
@@ -3,7 +3,11 @@ package com.example.demo.Repository;
 import java.util.List;
 import java.util.UUID;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.UserExam;
 import com.example.demo.model.UserExamId;
@@ -11,4 +15,7 @@ import com.example.demo.model.UserExamId;
 public interface UserExamRepository extends JpaRepository<UserExam, UserExamId>{
     List<UserExam> findByExamId(UUID examId);
 
+    @Query("select ue from UserExam ue join fetch ue.user join fetch ue.exam where ue.exam.id = :examId order by ue.user.id")
+    Slice<UserExam> findSliceByExamId(@Param("examId") UUID examId, Pageable pageable);
+
 }
@@ -0,0 +1,157 @@
+package com.example.demo.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import com.example.demo.Repository.CertificateRecordRepository;
+import com.example.demo.Repository.UserExamRepository;
+import com.example.demo.dto.CertificateRequest;
+import com.example.demo.model.CertificateRecord;
+import com.example.demo.model.UserExam;
+import com.itextpdf.kernel.exceptions.PdfException;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+
+/**
+ * Streams every certificate of an exam into one download, page by page, so
+ * memory use does not grow with the exam.
+ */
+@Service
+public class CertificateArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateArchiveService.class);
+
+    private static final int PAGE_SIZE = 200;
+
+    @Autowired
+    private UserExamRepository userExamRepository;
+
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
+
+    @Autowired
+    private CertificateTemplateService certificateService;
+
+    // Used for results that have no stored certificate yet
+    @Value("${certificate.archive.default-template:template1}")
+    private String defaultTemplate;
+
+    public void writeZip(UUID examId, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        List<String> missing = new ArrayList<>();
+
+        forEachResult(examId, (userExam, record) -> {
+            String entryName = userExam.getUser().getName().trim().replaceAll("[^a-zA-Z0-9_-]", "_")
+                    + "_" + userExam.getUser().getId() + ".pdf";
+            zip.putNextEntry(new ZipEntry(entryName));
+            try {
+                writeCertificate(userExam, record, zip);
+            } catch (IOException e) {
+                logger.warn("Certificate for user {} left out of archive: {}", userExam.getUser().getId(), e.getMessage());
+                missing.add(userExam.getUser().getName() + " (" + userExam.getUser().getId() + "): " + e.getMessage());
+            }
+            zip.closeEntry();
+        });
+
+        if (!missing.isEmpty()) {
+            zip.putNextEntry(new ZipEntry("missing.txt"));
+            zip.write(String.join("\n", missing).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    public void writeMergedPdf(UUID examId, OutputStream out) throws IOException {
+        PdfDocument merged = new PdfDocument(new PdfWriter(StreamUtils.nonClosing(out)));
+
+        forEachResult(examId, (userExam, record) -> {
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            try {
+                writeCertificate(userExam, record, single);
+            } catch (IOException e) {
+                logger.warn("Certificate for user {} left out of merged PDF: {}", userExam.getUser().getId(), e.getMessage());
+                return;
+            }
+            try (PdfDocument source = new PdfDocument(new PdfReader(new ByteArrayInputStream(single.toByteArray())))) {
+                source.copyPagesTo(1, source.getNumberOfPages(), merged);
+                // Write the copied pages out now instead of holding them until close
+                merged.flushCopiedObjects(source);
+            } catch (PdfException e) {
+                logger.warn("Certificate for user {} is not a readable PDF: {}", userExam.getUser().getId(), e.getMessage());
+            }
+        });
+
+        if (merged.getNumberOfPages() == 0) {
+            merged.addNewPage(); // iText refuses to close an empty document
+        }
+        merged.close();
+    }
+
+    @FunctionalInterface
+    private interface ResultConsumer {
+        void accept(UserExam userExam, CertificateRecord record) throws IOException;
+    }
+
+    private void forEachResult(UUID examId, ResultConsumer consumer) throws IOException {
+        Pageable page = PageRequest.of(0, PAGE_SIZE);
+        Slice<UserExam> slice;
+        do {
+            slice = userExamRepository.findSliceByExamId(examId, page);
+            List<Long> userIds = slice.getContent().stream().map(ue -> ue.getUser().getId()).toList();
+            Map<Long, CertificateRecord> records = certificateRecordRepository.findByExamIdAndUserIdIn(examId, userIds)
+                    .stream().collect(Collectors.toMap(CertificateRecord::getUserId, Function.identity()));
+
+            for (UserExam userExam : slice.getContent()) {
+                consumer.accept(userExam, records.get(userExam.getUser().getId()));
+            }
+            page = slice.nextPageable();
+        } while (slice.hasNext());
+    }
+
+    private void writeCertificate(UserExam userExam, CertificateRecord record, OutputStream out) throws IOException {
+        if (record != null && record.getObjectPath() != null && !Boolean.FALSE.equals(record.getStored())) {
+            try (InputStream stored = certificateService.openStoredCertificate(record.getObjectPath())) {
+                if (stored != null) {
+                    stored.transferTo(out);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching certificate", e);
+            }
+        }
+
+        CertificateRequest cert = new CertificateRequest();
+        cert.setUserId(userExam.getUser().getId());
+        cert.setExamId(userExam.getExam().getId());
+        cert.setSubject(userExam.getExam().getSubject());
+        cert.setPercentage(userExam.getPercentage() != null
+                ? BigDecimal.valueOf(userExam.getPercentage()).stripTrailingZeros().toPlainString() : "");
+        cert.setTemplateName(record != null && record.getTemplateName() != null ? record.getTemplateName() : defaultTemplate);
+        certificateService.writePdf(cert, userExam.getUser(), out);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Size-bounded LRU of rendered certificates and thumbnails on local disk,
+ * keyed by fingerprint. Handed-out files are pinned until released.
+ */
+@Service
+public class CertificateDiskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateDiskCache.class);
+
+    @Value("${certificate.lazy.cache-dir:${java.io.tmpdir}/certificate-cache}")
+    private String cacheDir;
+
+    @Value("${certificate.lazy.cache-max-bytes:1073741824}")
+    private long maxBytes;
+
+    private Path dir;
+
+    // Access-ordered: iteration starts at the least recently used file
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    // Keys handed out and not yet released, with their count; guarded by the monitor
+    private final Map<String, Integer> pins = new HashMap<>();
+    // Removed while pinned: the file goes when the last pin does, unless it was written again
+    private final Set<String> doomed = new HashSet<>();
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void open() throws IOException {
+        dir = Path.of(cacheDir).toAbsolutePath();
+        Files.createDirectories(dir);
+
+        // Re-adopt what a previous run left behind, oldest first
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> existing = files.toList();
+            for (Path file : existing) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file); // half-written
+                }
+            }
+            existing.stream()
+                    .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(CertificateDiskCache::lastModified))
+                    .forEach(file -> {
+                        long size = sizeOf(file);
+                        entries.put(file.getFileName().toString(), size);
+                        totalBytes += size;
+                    });
+        }
+        synchronized (this) {
+            evict();
+        }
+        logger.info("Certificate disk cache at {} holds {} files ({} bytes)", dir, entries.size(), totalBytes);
+    }
+
+    /**
+     * Returns the cached file for {@code key} (a file name such as
+     * {@code <fingerprint>.pdf}) pinned against eviction, or {@code null}.
+     * Callers must {@link #release(String)} it when done.
+     */
+    public Path get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+            Path file = fileFor(key);
+            if (!Files.exists(file)) {
+                forget(key); // removed behind our back
+                return null;
+            }
+            pin(key);
+            return file;
+        }
+    }
+
+    /**
+     * Returns the cached file pinned like {@link #get(String)}, producing it
+     * with {@code content} on a miss. Concurrent misses on the same key share
+     * a single render.
+     */
+    public Path getOrCreate(String key, CertificateTemplateService.PdfContent content) throws IOException {
+        while (true) {
+            Path cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+
+            CompletableFuture<Path> mine = new CompletableFuture<>();
+            CompletableFuture<Path> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                try {
+                    existing.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                continue; // pin it ourselves; renders again in the rare case it was evicted meanwhile
+            }
+            try {
+                Path file = write(key, content);
+                mine.complete(file);
+                return file;
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key);
+            }
+        }
+    }
+
+    /** Drops one pin taken by {@link #get(String)} or {@link #getOrCreate}. */
+    public synchronized void release(String key) {
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        if (!pins.containsKey(key) && doomed.remove(key)) {
+            delete(key);
+        }
+        evict();
+    }
+
+    /**
+     * Drops every entry whose key matches, e.g. all certificates of a
+     * template that was replaced. Files still being sent are deleted once
+     * they are released.
+     */
+    public synchronized void removeIf(Predicate<String> keys) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            String key = entry.getKey();
+            if (!keys.test(key)) {
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            iterator.remove();
+            if (pins.containsKey(key)) {
+                doomed.add(key);
+            } else {
+                delete(key);
+            }
+        }
+    }
+
+    private Path write(String key, CertificateTemplateService.PdfContent content) throws IOException {
+        Path temp = Files.createTempFile(dir, key + ".", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                content.writeTo(out);
+            }
+            Path file = fileFor(key);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            long size = Files.size(file);
+            synchronized (this) {
+                forget(key);
+                doomed.remove(key); // the new file is current
+                entries.put(key, size);
+                totalBytes += size;
+                pin(key);
+                evict();
+            }
+            return file;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path fileFor(String key) {
+        return dir.resolve(key);
+    }
+
+    // Callers hold the monitor
+    private void forget(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    // Callers hold the monitor
+    private void pin(String key) {
+        pins.merge(key, 1, Integer::sum);
+    }
+
+    // Callers hold the monitor. Pinned files are skipped, so the cache may run
+    // over its budget until they are released.
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (pins.containsKey(entry.getKey())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(fileFor(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not evict cached certificate {}: {}", entry.getKey(), e.getMessage());
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    // Callers hold the monitor
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(fileFor(key));
+        } catch (IOException e) {
+            logger.warn("Could not delete cached certificate {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
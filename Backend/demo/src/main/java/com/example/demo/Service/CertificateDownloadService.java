@@ -0,0 +1,212 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.Repository.CertificateRecordRepository;
+import com.example.demo.Repository.UserExamRepository;
+import com.example.demo.Repository.UserRepository;
+import com.example.demo.dto.CertificateRequest;
+import com.example.demo.model.CertificateRecord;
+import com.example.demo.model.User;
+import com.example.demo.model.UserExam;
+import com.example.demo.model.UserExamId;
+
+/**
+ * Serves single certificates from the disk cache, filling it from storage
+ * or by rendering the recorded inputs (lazy mode).
+ */
+@Service
+public class CertificateDownloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateDownloadService.class);
+
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserExamRepository userExamRepository;
+
+    @Autowired
+    private CertificateTemplateService certificateService;
+
+    @Autowired
+    private CertificateDiskCache diskCache;
+
+    @Autowired
+    private CertificateTemplateRegistry templateRegistry;
+
+    @Value("${certificate.lazy.upload-on-render:true}")
+    private boolean uploadOnRender;
+
+    @Value("${certificate.archive.default-template:template1}")
+    private String defaultTemplate;
+
+    private final ExecutorService uploader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "certificate-lazy-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A certificate file ready to be sent, with a tag that changes whenever
+     * its content does. The file stays on disk until this is closed.
+     */
+    public record CertificateFile(Path path, String tag, Runnable release) implements AutoCloseable {
+        @Override
+        public void close() {
+            release.run();
+        }
+    }
+
+    /**
+     * Returns the certificate for a user and exam, producing it on first
+     * access, or empty if no certificate was ever recorded for them.
+     */
+    public Optional<CertificateFile> open(Long userId, UUID examId) throws IOException {
+        CertificateRecord record = certificateRecordRepository.findByUserIdAndExamId(userId, examId).orElse(null);
+        return record == null ? Optional.empty() : Optional.of(open(record));
+    }
+
+    /**
+     * Returns the PNG thumbnail of a certificate, rendering it (and the
+     * certificate, if needed) on first access.
+     */
+    public Optional<CertificateFile> openThumbnail(Long userId, UUID examId) throws IOException {
+        CertificateRecord record = certificateRecordRepository.findByUserIdAndExamId(userId, examId).orElse(null);
+        if (record == null) {
+            return Optional.empty();
+        }
+        String key = cacheKey(record) + ".png";
+        Path cached = diskCache.get(key);
+        if (cached == null) {
+            try (CertificateFile pdf = open(record)) {
+                cached = diskCache.getOrCreate(key,
+                        out -> out.write(certificateService.renderThumbnail(pdf.path(), 0)));
+            }
+        }
+        return Optional.of(new CertificateFile(cached, cacheKey(record) + "-thumbnail", () -> diskCache.release(key)));
+    }
+
+    // Starts with "<template>." so a replaced template's files can be dropped; names never contain a dot.
+    // The issue date is printed but not fingerprinted, so a forced re-issue on another day gets a new key.
+    private String cacheKey(CertificateRecord record) {
+        String template = record.getTemplateName() != null ? record.getTemplateName() : defaultTemplate;
+        String key = record.getFingerprint() != null ? record.getFingerprint() : record.getUserId() + "_" + record.getExamId();
+        return template + "." + (record.getIssueDate() != null ? key + "-" + record.getIssueDate() : key);
+    }
+
+    private CertificateFile open(CertificateRecord record) throws IOException {
+        Long userId = record.getUserId();
+        String key = cacheKey(record) + ".pdf";
+
+        Path cached = diskCache.get(key);
+        if (cached != null) {
+            return new CertificateFile(cached, cacheKey(record), () -> diskCache.release(key));
+        }
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IOException("User not found with ID: " + userId));
+        boolean[] rendered = {false};
+        Path file = diskCache.getOrCreate(key, out -> {
+            if (!Boolean.FALSE.equals(record.getStored()) && copyStored(record, out)) {
+                return;
+            }
+            rendered[0] = true;
+            render(record, user, out);
+        });
+
+        if (rendered[0] && uploadOnRender && record.getSubject() != null) {
+            diskCache.get(key); // a second pin, held until the upload is done
+            uploader.submit(() -> {
+                try {
+                    upload(record, user, file);
+                } finally {
+                    diskCache.release(key);
+                }
+            });
+        }
+        return new CertificateFile(file, cacheKey(record), () -> diskCache.release(key));
+    }
+
+    private boolean copyStored(CertificateRecord record, OutputStream out) throws IOException {
+        if (record.getObjectPath() == null) {
+            return false;
+        }
+        try (InputStream stored = certificateService.openStoredCertificate(record.getObjectPath())) {
+            if (stored == null) {
+                return false;
+            }
+            stored.transferTo(out);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching certificate", e);
+        }
+    }
+
+    private void render(CertificateRecord record, User user, OutputStream out) throws IOException {
+        CertificateRequest cert = new CertificateRequest();
+        cert.setUserId(record.getUserId());
+        cert.setExamId(record.getExamId());
+        cert.setSubject(record.getSubject());
+        cert.setPercentage(record.getPercentage());
+        cert.setTemplateName(record.getTemplateName() != null ? record.getTemplateName() : defaultTemplate);
+
+        // Rows written before lazy mode do not carry their inputs; take them from the exam result
+        if (cert.getSubject() == null || cert.getPercentage() == null) {
+            UserExam userExam = userExamRepository.findById(new UserExamId(record.getUserId(), record.getExamId()))
+                    .orElseThrow(() -> new IOException("No exam result for user " + record.getUserId()));
+            if (cert.getSubject() == null) {
+                cert.setSubject(userExam.getExam().getSubject());
+            }
+            if (cert.getPercentage() == null && userExam.getPercentage() != null) {
+                cert.setPercentage(BigDecimal.valueOf(userExam.getPercentage()).stripTrailingZeros().toPlainString());
+            }
+        }
+
+        // Print the day the certificate was issued, not the day it happened to be downloaded
+        LocalDate issued = record.getIssueDate() != null ? record.getIssueDate()
+                : record.getGeneratedAt() != null ? record.getGeneratedAt().toLocalDate() : LocalDate.now();
+        certificateService.writePdf(cert, user, CertificateTemplateService.issueDate(issued), out);
+    }
+
+    private void upload(CertificateRecord record, User user, Path file) {
+        try {
+            if (certificateService.uploadCertificate(file, record.getSubject(), user.getName())) {
+                certificateRecordRepository.markStored(record.getId(), record.getFingerprint());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Still served from disk; the next miss renders and tries again
+            logger.warn("Background upload of certificate for user {} exam {} failed: {}",
+                    record.getUserId(), record.getExamId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploader.shutdown();
+    }
+}
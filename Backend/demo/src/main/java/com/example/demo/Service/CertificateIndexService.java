@@ -0,0 +1,127 @@
+package com.example.demo.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.example.demo.Repository.CertificateRecordRepository;
+import com.example.demo.dto.CertificateIndexEntry;
+import com.example.demo.dto.CertificateIndexPage;
+import com.example.demo.model.CertificateRecord;
+
+/**
+ * Certificate listings served from certificate_records instead of listing
+ * the storage bucket. Pages are keyset-ordered by record id.
+ */
+@Service
+public class CertificateIndexService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    // Origin clients reach this API at, e.g. https://api.example.com; empty takes it from the current request
+    @Value("${api.public-base-url:}")
+    private String apiBaseUrl;
+
+    /**
+     * One page of the index. At most one filter is applied, checked in the
+     * order user, exam, student, subject, date range; none lists everything.
+     */
+    public CertificateIndexPage find(Long userId, UUID examId, String studentName, String subject,
+                                     LocalDate from, LocalDate to, Long after, int limit) {
+        long cursor = after != null ? after : 0L;
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells us whether there is a next page without a count query
+        Pageable page = Pageable.ofSize(size + 1);
+
+        List<CertificateRecord> records;
+        if (userId != null) {
+            records = certificateRecordRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(userId, cursor, page);
+        } else if (examId != null) {
+            records = certificateRecordRepository.findByExamIdAndIdGreaterThanOrderByIdAsc(examId, cursor, page);
+        } else if (studentName != null) {
+            // Matched like the storage listing did: "Jo Doe" and "Jo_Doe" are the same folder
+            records = certificateRecordRepository.findByStudentKeyAndIdGreaterThanOrderByIdAsc(
+                    CertificateTemplateService.pathKey(studentName), cursor, page);
+        } else if (subject != null) {
+            records = certificateRecordRepository.findBySubjectKeyAndIdGreaterThanOrderByIdAsc(
+                    CertificateTemplateService.pathKey(subject), cursor, page);
+        } else if (from != null || to != null) {
+            records = certificateRecordRepository.findByGeneratedAtBetweenAndIdGreaterThanOrderByIdAsc(
+                    (from != null ? from : LocalDate.of(1970, 1, 1)).atStartOfDay(),
+                    (to != null ? to.plusDays(1) : LocalDate.now().plusDays(1)).atStartOfDay(),
+                    cursor, page);
+        } else {
+            records = certificateRecordRepository.findByIdGreaterThanOrderByIdAsc(cursor, page);
+        }
+
+        boolean more = records.size() > size;
+        List<CertificateIndexEntry> items = records.stream().limit(size).map(this::toEntry).toList();
+        Long nextCursor = more ? items.get(items.size() - 1).getId() : null;
+        return new CertificateIndexPage(items, nextCursor);
+    }
+
+    /**
+     * Absolute URL a certificate can be fetched from: the public object URL
+     * once it is stored, otherwise the endpoint that renders it on first access.
+     */
+    public String urlFor(CertificateRecord record) {
+        if (record.getObjectPath() != null && !Boolean.FALSE.equals(record.getStored())) {
+            return absolute(objectStorage.publicUrl(record.getObjectPath()));
+        }
+        return absolute("/api/templates/certificates/user/" + record.getUserId() + "/exam/" + record.getExamId());
+    }
+
+    /**
+     * Absolute URL of the certificate's thumbnail: the uploaded PNG if there
+     * is one, otherwise the endpoint that renders it on first access.
+     */
+    public String thumbnailUrlFor(CertificateRecord record) {
+        if (record.getThumbnailPath() != null && !Boolean.FALSE.equals(record.getStored())) {
+            return absolute(objectStorage.publicUrl(record.getThumbnailPath()));
+        }
+        return absolute("/api/templates/certificates/user/" + record.getUserId() + "/exam/" + record.getExamId() + "/thumbnail");
+    }
+
+    // Paths served by this API (lazy downloads, local storage, the object proxy) get its origin
+    private String absolute(String url) {
+        if (!url.startsWith("/")) {
+            return url;
+        }
+        if (apiBaseUrl != null && !apiBaseUrl.isBlank()) {
+            return (apiBaseUrl.endsWith("/") ? apiBaseUrl.substring(0, apiBaseUrl.length() - 1) : apiBaseUrl) + url;
+        }
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return url; // no request to take the origin from
+        }
+        return ServletUriComponentsBuilder.fromCurrentContextPath().path(url).build().toUriString();
+    }
+
+    private CertificateIndexEntry toEntry(CertificateRecord record) {
+        CertificateIndexEntry entry = new CertificateIndexEntry();
+        entry.setId(record.getId());
+        entry.setUserId(record.getUserId());
+        entry.setExamId(record.getExamId());
+        entry.setStudentName(record.getStudentName());
+        entry.setSubject(record.getSubject());
+        entry.setTemplateName(record.getTemplateName());
+        entry.setObjectPath(record.getObjectPath());
+        entry.setUrl(urlFor(record));
+        entry.setThumbnailUrl(thumbnailUrlFor(record));
+        entry.setStored(!Boolean.FALSE.equals(record.getStored()));
+        entry.setGeneratedAt(record.getGeneratedAt());
+        return entry;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.demo.Repository.CertificateJobItemRepository;
+import com.example.demo.Repository.CertificateJobRepository;
+import com.example.demo.dto.CertificateJobStatus;
+import com.example.demo.dto.CertificateRequest;
+import com.example.demo.dto.CertificateResult;
+import com.example.demo.model.CertificateJob;
+import com.example.demo.model.CertificateJobItem;
+
+/**
+ * Background certificate batches: a job only queues its items, which any
+ * node running a CertificateQueueWorker renders.
+ */
+@Service
+public class CertificateJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateJobService.class);
+
+    @Autowired
+    private CertificateJobRepository jobRepository;
+
+    @Autowired
+    private CertificateJobItemRepository itemRepository;
+
+    @Autowired
+    private CertificateQueueWorker queueWorker;
+
+    private final ScheduledExecutorService progressPublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "certificate-job-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Transactional // a job is never visible without all of its items
+    public CertificateJob submit(List<CertificateRequest> requests, boolean force) {
+        CertificateJob job = new CertificateJob();
+        job.setStatus(CertificateJob.QUEUED);
+        job.setForce(force);
+        job.setTotal(requests.size());
+        job.setCreatedAt(LocalDateTime.now());
+        job = jobRepository.save(job);
+
+        List<CertificateJobItem> items = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            CertificateRequest cert = requests.get(i);
+            CertificateJobItem item = new CertificateJobItem();
+            item.setJobId(job.getId());
+            item.setItemIndex(i);
+            item.setUserId(cert.getUserId());
+            item.setExamId(cert.getExamId());
+            item.setPercentage(cert.getPercentage());
+            item.setSubject(cert.getSubject());
+            item.setTemplateName(cert.getTemplateName());
+            item.setStatus(CertificateJobItem.PENDING);
+            items.add(item);
+        }
+        itemRepository.saveAll(items);
+
+        // Saves a poll interval when this node renders too; otherwise another worker finds it.
+        // Woken only after the commit, so the worker sees the rows
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                queueWorker.wake();
+            }
+        });
+        return job;
+    }
+
+    public Optional<CertificateJobStatus> getStatus(UUID jobId) {
+        return jobRepository.findById(jobId).map(this::toStatus);
+    }
+
+    /**
+     * Streams a status snapshot every second until the job finishes.
+     */
+    public SseEmitter subscribe(UUID jobId) {
+        SseEmitter emitter = new SseEmitter(0L);
+        // The first tick can run before scheduleAtFixedRate returns, so stopping waits for the future
+        CompletableFuture<ScheduledFuture<?>> task = new CompletableFuture<>();
+        Runnable stop = () -> task.thenAccept(future -> future.cancel(false));
+        task.complete(progressPublisher.scheduleAtFixedRate(() -> {
+            try {
+                Optional<CertificateJobStatus> status = getStatus(jobId);
+                if (status.isEmpty()) {
+                    emitter.completeWithError(new IllegalArgumentException("Job not found: " + jobId));
+                    stop.run();
+                    return;
+                }
+                emitter.send(SseEmitter.event().name("progress").data(status.get()));
+                if (CertificateJob.COMPLETED.equals(status.get().getStatus())) {
+                    emitter.complete();
+                    stop.run();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // client went away
+                stop.run();
+            } catch (Exception e) {
+                logger.warn("Progress stream for job {} failed: {}", jobId, e.getMessage());
+                emitter.completeWithError(e);
+                stop.run();
+            }
+        }, 0, 1, TimeUnit.SECONDS));
+        emitter.onCompletion(stop);
+        emitter.onTimeout(stop);
+        return emitter;
+    }
+
+    private CertificateJobStatus toStatus(CertificateJob job) {
+        CertificateJobStatus status = new CertificateJobStatus();
+        status.setJobId(job.getId());
+        status.setStatus(job.getStatus());
+        status.setTotal(job.getTotal());
+        status.setCreatedAt(job.getCreatedAt());
+        status.setStartedAt(job.getStartedAt());
+        status.setFinishedAt(job.getFinishedAt());
+
+        for (Object[] row : itemRepository.countByStatus(job.getId())) {
+            int count = ((Number) row[1]).intValue();
+            String itemStatus = (String) row[0];
+            if (CertificateJobItem.PENDING.equals(itemStatus)) {
+                status.setPending(count);
+            } else if (CertificateResult.Status.SUCCEEDED.name().equals(itemStatus)) {
+                status.setSucceeded(count);
+            } else if (CertificateResult.Status.FAILED.name().equals(itemStatus)) {
+                status.setFailed(count);
+            } else if (CertificateResult.Status.SKIPPED.name().equals(itemStatus)) {
+                status.setSkipped(count);
+            }
+        }
+
+        if (job.getStartedAt() != null) {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+            double seconds = Math.max(Duration.between(job.getStartedAt(), end).toMillis(), 1) / 1000.0;
+            int doneThisRun = job.getTotal() - status.getPending() - job.getDoneAtStart();
+            status.setThroughputPerSecond(doneThisRun / seconds);
+            if (status.getPending() == 0) {
+                status.setEtaSeconds(0L);
+            } else if (doneThisRun > 0) {
+                status.setEtaSeconds(Math.round(status.getPending() / status.getThroughputPerSecond()));
+            }
+        }
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        progressPublisher.shutdownNow();
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.demo.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.Repository.CertificateJobRepository;
+import com.example.demo.dto.CertificateRequest;
+import com.example.demo.dto.CertificateResult;
+import com.example.demo.model.CertificateJob;
+
+/**
+ * Renders queued certificate job items, claimed with SKIP LOCKED under a
+ * lease the heartbeat renews. Failures are retried with backoff unless no
+ * retry can fix them.
+ */
+@Service
+public class CertificateQueueWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateQueueWorker.class);
+
+    // Lease and backoff times are taken from the database clock so workers need not agree on theirs
+    static final String CLAIM_ITEMS =
+            "UPDATE certificate_job_items SET leased_by = ?, "
+            + "lease_expires_at = localtimestamp + ? * interval '1 second', attempts = COALESCE(attempts, 0) + 1 "
+            + "WHERE id IN (SELECT id FROM certificate_job_items WHERE status = 'PENDING' "
+            + "AND (lease_expires_at IS NULL OR lease_expires_at < localtimestamp) "
+            + "AND (next_attempt_at IS NULL OR next_attempt_at <= localtimestamp) "
+            + "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, job_id, user_id, exam_id, percentage, subject, template_name, attempts";
+
+    private static final String RENEW_LEASES =
+            "UPDATE certificate_job_items SET lease_expires_at = localtimestamp + ? * interval '1 second' "
+            + "WHERE leased_by = ? AND status = 'PENDING'";
+
+    private static final String FINISH_ITEM =
+            "UPDATE certificate_job_items SET status = ?, message = ?, leased_by = NULL, lease_expires_at = NULL "
+            + "WHERE id = ? AND leased_by = ?";
+
+    private static final String RETRY_ITEM =
+            "UPDATE certificate_job_items SET message = ?, leased_by = NULL, lease_expires_at = NULL, "
+            + "next_attempt_at = localtimestamp + ? * interval '1 second' WHERE id = ? AND leased_by = ?";
+
+    // Items claimed but not started are handed back without using up an attempt
+    private static final String RELEASE_LEASES =
+            "UPDATE certificate_job_items SET leased_by = NULL, lease_expires_at = NULL, attempts = attempts - 1 "
+            + "WHERE leased_by = ? AND status = 'PENDING'";
+
+    private static final String START_JOB =
+            "UPDATE certificate_jobs SET status = 'RUNNING', started_at = ?, done_at_start = 0 "
+            + "WHERE id = ? AND status = 'QUEUED'";
+
+    private static final String COMPLETE_JOB =
+            "UPDATE certificate_jobs SET status = 'COMPLETED', finished_at = ? WHERE id = ? AND status <> 'COMPLETED' "
+            + "AND NOT EXISTS (SELECT 1 FROM certificate_job_items WHERE job_id = ? AND status = 'PENDING')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CertificateJobRepository jobRepository;
+
+    @Autowired
+    private CertificateTemplateService certificateService;
+
+    // false on API-only nodes; the "worker" profile runs nothing but this
+    @Value("${certificate.worker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${certificate.worker.batch-size:200}")
+    private int batchSize;
+
+    @Value("${certificate.worker.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${certificate.worker.lease-seconds:120}")
+    private int leaseSeconds;
+
+    @Value("${certificate.worker.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${certificate.worker.retry-base-seconds:10}")
+    private long retryBaseSeconds;
+
+    @Value("${certificate.worker.retry-max-seconds:600}")
+    private long retryMaxSeconds;
+
+    private final String workerId = LocalNode.processId();
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private Thread poller;
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "certificate-worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record ClaimedItem(Long id, UUID jobId, CertificateRequest request, int attempts) { }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Certificate queue worker disabled on this node");
+            return;
+        }
+        running = true;
+        // Not a daemon: in the worker profile there is no web server, and this thread is what keeps the JVM up
+        poller = new Thread(this::pollLoop, "certificate-queue-worker");
+        poller.start();
+        long every = Math.max(leaseSeconds / 3, 1);
+        heartbeat.scheduleAtFixedRate(this::renewLeases, every, every, TimeUnit.SECONDS);
+        logger.info("Certificate queue worker {} started", workerId);
+    }
+
+    /** Skips the rest of the poll interval, e.g. right after a job was submitted on this node. */
+    public void wake() {
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            int claimed = 0;
+            try {
+                claimed = runOnce();
+            } catch (Exception e) {
+                logger.warn("Certificate queue poll failed: {}", e.getMessage());
+            }
+            // A full batch means there is probably more waiting; otherwise idle until woken or the interval passes
+            if (claimed < batchSize && running) {
+                synchronized (wakeUp) {
+                    try {
+                        wakeUp.wait(pollIntervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Claims and renders one batch; returns the number of items claimed. */
+    int runOnce() {
+        List<ClaimedItem> items = jdbcTemplate.query(CLAIM_ITEMS, (rs, rowNum) -> {
+            CertificateRequest cert = new CertificateRequest();
+            cert.setUserId(rs.getObject("user_id", Long.class));
+            cert.setExamId(rs.getObject("exam_id", UUID.class));
+            cert.setPercentage(rs.getString("percentage"));
+            cert.setSubject(rs.getString("subject"));
+            cert.setTemplateName(rs.getString("template_name"));
+            return new ClaimedItem(rs.getLong("id"), rs.getObject("job_id", UUID.class), cert, rs.getInt("attempts"));
+        }, workerId, leaseSeconds, batchSize);
+        if (items.isEmpty()) {
+            return 0;
+        }
+
+        Map<UUID, List<ClaimedItem>> byJob = new LinkedHashMap<>();
+        for (ClaimedItem item : items) {
+            byJob.computeIfAbsent(item.jobId(), id -> new ArrayList<>()).add(item);
+        }
+        for (Map.Entry<UUID, List<ClaimedItem>> entry : byJob.entrySet()) {
+            render(entry.getKey(), entry.getValue());
+        }
+        return items.size();
+    }
+
+    private void render(UUID jobId, List<ClaimedItem> items) {
+        CertificateJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            items.forEach(item -> finish(item, CertificateResult.Status.FAILED.name(), "Job no longer exists"));
+            return;
+        }
+        jdbcTemplate.update(START_JOB, LocalDateTime.now(), jobId);
+
+        List<CertificateRequest> requests = items.stream().map(ClaimedItem::request).toList();
+        List<CertificateResult> results = Collections.synchronizedList(new ArrayList<>());
+        try {
+            certificateService.processCertificates(requests, Boolean.TRUE.equals(job.getForce()), results::add);
+        } catch (Exception e) {
+            // The certificate records may not have been written; back the whole batch off like any other failure
+            logger.error("Rendering {} items of job {} failed: {}", items.size(), jobId, e.getMessage(), e);
+            items.forEach(item -> retryOrFail(item, e.getMessage()));
+            jdbcTemplate.update(COMPLETE_JOB, LocalDateTime.now(), jobId, jobId);
+            return;
+        }
+        // Only now are the certificate records saved, so a SUCCEEDED item always has its record
+        results.forEach(result -> record(items.get(result.getIndex()), result));
+        jdbcTemplate.update(COMPLETE_JOB, LocalDateTime.now(), jobId, jobId);
+    }
+
+    private void record(ClaimedItem item, CertificateResult result) {
+        if (result.getStatus() == CertificateResult.Status.FAILED && !result.isPermanent()) {
+            retryOrFail(item, result.getMessage());
+        } else {
+            finish(item, result.getStatus().name(), result.getMessage());
+        }
+    }
+
+    private void retryOrFail(ClaimedItem item, String message) {
+        if (item.attempts() >= maxAttempts) {
+            finish(item, CertificateResult.Status.FAILED.name(), message);
+            return;
+        }
+        jdbcTemplate.update(RETRY_ITEM, truncate(message), LocalNode.backoffSeconds(retryBaseSeconds, retryMaxSeconds, item.attempts()), item.id(), workerId);
+    }
+
+    private void finish(ClaimedItem item, String status, String message) {
+        jdbcTemplate.update(FINISH_ITEM, status, truncate(message), item.id(), workerId);
+    }
+
+    private void renewLeases() {
+        try {
+            jdbcTemplate.update(RENEW_LEASES, leaseSeconds, workerId);
+        } catch (Exception e) {
+            logger.warn("Could not renew certificate leases for {}: {}", workerId, e.getMessage());
+        }
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        heartbeat.shutdownNow();
+        if (poller == null) {
+            return;
+        }
+        poller.interrupt();
+        poller.join(TimeUnit.SECONDS.toMillis(10));
+        try {
+            int released = jdbcTemplate.update(RELEASE_LEASES, workerId);
+            if (released > 0) {
+                logger.info("Handed {} unfinished certificate items back to the queue", released);
+            }
+        } catch (Exception e) {
+            // They come back anyway once the lease expires
+            logger.warn("Could not release certificate leases for {}: {}", workerId, e.getMessage());
+        }
+    }
+}
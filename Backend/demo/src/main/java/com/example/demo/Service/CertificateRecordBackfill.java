@@ -0,0 +1,151 @@
+package com.example.demo.Service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Records certificates uploaded before certificate_records existed, and
+ * fills the index keys of older records.
+ */
+@Service
+public class CertificateRecordBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateRecordBackfill.class);
+
+    // Keyset over exam results that have no record yet
+    private static final String FIND_UNRECORDED =
+            "SELECT ue.user_id, ue.exam_id, u.name, e.subject FROM user_exam ue "
+            + "JOIN users u ON u.id = ue.user_id JOIN exam e ON e.id = ue.exam_id "
+            + "WHERE (ue.user_id, ue.exam_id) > (?, ?) AND NOT EXISTS "
+            + "(SELECT 1 FROM certificate_records r WHERE r.user_id = ue.user_id AND r.exam_id = ue.exam_id) "
+            + "ORDER BY ue.user_id, ue.exam_id LIMIT ?";
+
+    // A batch may have recorded the certificate in the meantime; its row wins
+    private static final String INSERT_RECORD =
+            "INSERT INTO certificate_records (user_id, exam_id, student_name, subject, object_path, stored, "
+            + "student_key, subject_key) VALUES (?, ?, ?, ?, ?, true, ?, ?) ON CONFLICT (user_id, exam_id) DO NOTHING";
+
+    // Records from before the key columns: the keys are the folder and file name of object_path
+    private static final String FILL_KEYS =
+            "UPDATE certificate_records SET student_key = split_part(object_path, '/', 2), "
+            + "subject_key = regexp_replace(split_part(object_path, '/', 3), '\\.pdf$', '') "
+            + "WHERE id IN (SELECT id FROM certificate_records WHERE student_key IS NULL "
+            + "AND object_path LIKE 'certificates/%/%.pdf' LIMIT ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Value("${certificate.records.backfill-on-startup:false}")
+    private boolean backfillOnStartup;
+
+    @Value("${certificate.records.backfill-batch-size:500}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "certificate-record-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Unrecorded(Long userId, UUID examId, String studentName, String subject) { }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        executor.submit(() -> {
+            try {
+                long filled = 0;
+                int updated;
+                do {
+                    updated = jdbcTemplate.update(FILL_KEYS, batchSize);
+                    filled += updated;
+                } while (updated > 0);
+                if (filled > 0) {
+                    logger.info("Filled the index keys of {} certificate records", filled);
+                }
+            } catch (Exception e) {
+                logger.error("Filling certificate record keys failed", e);
+            }
+        });
+        if (backfillOnStartup) {
+            start();
+        }
+    }
+
+    /** Starts a backfill in the background; returns false if one is already running. */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.submit(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                logger.error("Certificate record backfill failed", e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void run() throws Exception {
+        long checked = 0;
+        long recorded = 0;
+        Long afterUser = 0L;
+        UUID afterExam = new UUID(0L, 0L);
+        while (true) {
+            List<Unrecorded> page = jdbcTemplate.query(FIND_UNRECORDED,
+                    (rs, rowNum) -> new Unrecorded(rs.getLong(1), rs.getObject(2, UUID.class),
+                            rs.getString(3), rs.getString(4)),
+                    afterUser, afterExam, batchSize);
+            for (Unrecorded row : page) {
+                checked++;
+                if (row.studentName() == null || row.subject() == null) {
+                    continue; // no path could have been built for it
+                }
+                String objectPath = CertificateTemplateService.certificatePath(row.subject(), row.studentName());
+                if (objectStorage.exists(objectPath)) {
+                    recorded += jdbcTemplate.update(INSERT_RECORD,
+                            row.userId(), row.examId(), row.studentName(), row.subject(), objectPath,
+                            CertificateTemplateService.pathKey(row.studentName()),
+                            CertificateTemplateService.pathKey(row.subject()));
+                }
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+            Unrecorded last = page.get(page.size() - 1);
+            afterUser = last.userId();
+            afterExam = last.examId();
+        }
+        logger.info("Certificate record backfill checked {} exam results and recorded {} certificates", checked, recorded);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
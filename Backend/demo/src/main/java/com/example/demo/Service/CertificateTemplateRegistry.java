@@ -0,0 +1,201 @@
+package com.example.demo.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+
+import com.example.demo.Repository.CertificateTemplateRepository;
+import com.example.demo.model.CertificateTemplate;
+import com.example.demo.model.CertificateTemplateAsset;
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+
+/**
+ * Certificate templates known to this node: bundled ones plus those uploaded
+ * to certificate_templates, compiled once per version.
+ */
+@Service
+public class CertificateTemplateRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateTemplateRegistry.class);
+
+    /** Templates shipped in src/main/resources/templates. */
+    public static final List<String> BUILT_IN = List.of("template1", "template2", "template3");
+
+    /** Scheme templates use to reference their uploaded assets, e.g. {@code asset:logo.png}. */
+    public static final String ASSET_SCHEME = "asset";
+
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public record Asset(String contentType, byte[] bytes) { }
+
+    public record CompiledTemplate(String name, String html, Map<String, Asset> assets) { }
+
+    // template is null when the name has no uploaded source; updatedAt is what it was compiled from
+    private record Entry(CompiledTemplate template, LocalDateTime updatedAt, long checkedAt) { }
+
+    @Autowired
+    private CertificateTemplateRepository certificateTemplateRepository;
+
+    @Autowired
+    private RenderResourceCache resourceCache;
+
+    @Autowired
+    private ObjectProvider<TemplateEngine> templateEngine;
+
+    // How often a node checks whether another node uploaded a newer version
+    @Value("${certificate.templates.recheck-seconds:60}")
+    private long recheckSeconds;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    /** Called with the template name whenever a compiled template is replaced. */
+    public void addInvalidationListener(Consumer<String> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && VALID_NAME.matcher(name).matches();
+    }
+
+    /** Built-in and uploaded template names, sorted. */
+    public List<String> names() {
+        TreeSet<String> names = new TreeSet<>(BUILT_IN);
+        names.addAll(certificateTemplateRepository.findUploadedNames());
+        return new ArrayList<>(names);
+    }
+
+    public boolean exists(String name) {
+        return BUILT_IN.contains(name) || (isValidName(name) && get(name) != null);
+    }
+
+    /**
+     * The compiled form of an uploaded template, or {@code null} if the name
+     * has none (built-in templates resolve from the classpath instead).
+     */
+    public CompiledTemplate get(String name) {
+        Entry entry = entries.get(name);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.checkedAt() < recheckSeconds * 1000) {
+            return entry.template();
+        }
+
+        List<LocalDateTime> versions = certificateTemplateRepository.findUpdatedAtByName(name);
+        LocalDateTime version = versions.isEmpty() ? null : versions.get(0);
+        if (entry != null && Objects.equals(entry.updatedAt(), version)) {
+            entries.put(name, new Entry(entry.template(), entry.updatedAt(), now));
+            return entry.template();
+        }
+
+        CompiledTemplate compiled = certificateTemplateRepository.findFirstByName(name)
+                .filter(template -> template.getHtml() != null)
+                .map(this::compile)
+                .orElse(null);
+        entries.put(name, new Entry(compiled, version, now));
+        if (entry != null) {
+            invalidate(name);
+        }
+        return compiled;
+    }
+
+    /**
+     * Identifies the source a template renders from right now: the upload
+     * time of an uploaded template, empty for a bundled one.
+     */
+    public String version(String name) {
+        if (!isValidName(name)) {
+            return "";
+        }
+        get(name); // picks up a newer upload from another node
+        Entry entry = entries.get(name);
+        return entry != null && entry.updatedAt() != null ? entry.updatedAt().toString() : "";
+    }
+
+    /** Compiles a template without installing it, e.g. to validate an upload. */
+    public CompiledTemplate compile(String name, String html, List<CertificateTemplateAsset> assets) {
+        Map<String, Asset> resolved = new LinkedHashMap<>();
+        for (CertificateTemplateAsset asset : assets) {
+            String contentType = asset.getContentType() != null ? asset.getContentType() : "application/octet-stream";
+            byte[] bytes = resourceCache.optimizeImage(ASSET_SCHEME + ":" + name + "/" + asset.getName(),
+                    contentType, asset.getContent());
+            resolved.put(asset.getName(), new Asset(contentType, bytes));
+        }
+        return new CompiledTemplate(name, html, Collections.unmodifiableMap(resolved));
+    }
+
+    private CompiledTemplate compile(CertificateTemplate template) {
+        return compile(template.getName(), template.getHtml(), template.getAssets());
+    }
+
+    /** Makes a freshly saved template live on this node. */
+    public void install(CertificateTemplate saved) {
+        entries.put(saved.getName(), new Entry(compile(saved), saved.getUpdatedAt(), System.currentTimeMillis()));
+        invalidate(saved.getName());
+        logger.info("Installed certificate template {} ({} assets)", saved.getName(), saved.getAssets().size());
+    }
+
+    private void invalidate(String name) {
+        templateEngine.ifAvailable(engine -> engine.clearTemplateCacheFor(name));
+        invalidationListeners.forEach(listener -> listener.accept(name));
+    }
+
+    /** Serves {@code asset:<name>} URLs for one template to the PDF renderer. */
+    public FSStreamFactory assetStreams(String templateName) {
+        // Looked up per URL, so templates without assets never touch the registry
+        return url -> {
+            CompiledTemplate template = get(templateName);
+            return new AssetStream(template != null ? template.assets().get(assetName(url)) : null);
+        };
+    }
+
+    /** Asset lookup for a compiled template that is not installed yet. */
+    public static FSStreamFactory assetStreams(CompiledTemplate template) {
+        return url -> new AssetStream(template.assets().get(assetName(url)));
+    }
+
+    private static String assetName(String url) {
+        String name = url.substring(url.indexOf(':') + 1);
+        return name.startsWith("//") ? name.substring(2) : name;
+    }
+
+    private static class AssetStream implements FSStream {
+        private final Asset asset;
+
+        AssetStream(Asset asset) {
+            this.asset = asset;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return asset == null ? null : new ByteArrayInputStream(asset.bytes());
+        }
+
+        @Override
+        public Reader getReader() {
+            return asset == null ? null : new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,149 +1,918 @@
 package com.example.demo.Service;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.imageio.ImageIO;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
 
-import com.example.demo.Repository.UserExamRepository;
+import com.example.demo.Repository.CertificateRecordRepository;
+import com.example.demo.Repository.CertificateTemplateRepository;
 import com.example.demo.Repository.UserRepository;
+import com.example.demo.dto.CertificateBatchReport;
 import com.example.demo.dto.CertificateRequest;
+import com.example.demo.dto.CertificateResult;
+import com.example.demo.dto.RenderedPdf;
+import com.example.demo.model.CertificateRecord;
+import com.example.demo.model.CertificateTemplate;
+import com.example.demo.model.CertificateTemplateAsset;
 import com.example.demo.model.Exam;
 import com.example.demo.model.User;
-import com.example.demo.model.UserExam;
+import com.example.demo.model.UserExamId;
+import com.openhtmltopdf.extend.FSDOMMutator;
+import com.openhtmltopdf.extend.FSStreamFactory;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 
 @Service
 public class CertificateTemplateService {
 
-    private final String supabaseUrl;
-    private final String supabaseKey;
-    private final String bucket;
     private final TemplateEngine templateEngine;
     private final UserRepository userRepository;
     @Autowired
-    private  UserExamRepository userExamRepository;
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
     @Autowired
     private com.example.demo.Repository.ExamRepository ExamRepository;
+    @Autowired
+    private RenderResourceCache resourceCache;
+    @Autowired
+    private ObjectStorage objectStorage;
+    @Autowired
+    private StampingCertificateRenderer stampingRenderer;
+    @Autowired
+    private CertificateTemplateRepository certificateTemplateRepository;
+    @Autowired
+    private PdfCompactor pdfCompactor;
+    @Autowired
+    private CertificateTemplateRegistry templateRegistry;
+    @Autowired
+    private UploadOutbox uploadOutbox;
+
+    // "compact" adds a compression pass and downscales embedded images (see RenderResourceCache)
+    @Value("${certificate.output.profile:standard}")
+    private String outputProfile;
+
+    // PNG thumbnail stored next to every generated certificate, for gallery views
+    @Value("${certificate.thumbnail.enabled:true}")
+    private boolean thumbnailsEnabled;
+
+    @Value("${certificate.thumbnail.width:160}")
+    private int thumbnailWidth;
+
+    // Certificates above this size are logged; 0 disables the check
+    @Value("${certificate.output.size-budget-bytes:0}")
+    private long sizeBudgetBytes;
+
+    // Render engine per template name, read from certificate_templates on first use
+    private final Map<String, String> renderEngines = new ConcurrentHashMap<>();
+
+    // "lazy" only records batch results; certificates are rendered when first downloaded
+    @Value("${certificate.render.mode:eager}")
+    private String renderMode;
+
+
+
+    private static final String UPSERT_CERTIFICATE_RECORD =
+            "INSERT INTO certificate_records (user_id, exam_id, template_name, student_name, subject, percentage, object_path, "
+            + "stored, fingerprint, generated_at, thumbnail_path, issue_date, student_key, subject_key) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (user_id, exam_id) DO UPDATE SET "
+            + "template_name = EXCLUDED.template_name, student_name = EXCLUDED.student_name, "
+            + "thumbnail_path = EXCLUDED.thumbnail_path, student_key = EXCLUDED.student_key, "
+            + "subject = EXCLUDED.subject, subject_key = EXCLUDED.subject_key, percentage = EXCLUDED.percentage, "
+            + "object_path = EXCLUDED.object_path, stored = EXCLUDED.stored, "
+            + "fingerprint = EXCLUDED.fingerprint, generated_at = EXCLUDED.generated_at, issue_date = EXCLUDED.issue_date";
+
+    // A queued PDF is stored once the newest outbox entry for its path has landed
+    private static final String MARK_LANDED =
+            "UPDATE certificate_records r SET stored = true WHERE r.object_path = ? AND r.stored = false "
+            + "AND (SELECT o.status FROM upload_outbox o WHERE o.object_path = r.object_path "
+            + "ORDER BY o.id DESC LIMIT 1) = 'DONE'";
+
+    private static final String MARK_STORED =
+            "UPDATE certificate_records SET stored = true WHERE object_path = ? AND stored = false";
+
+    private static final String UPSERT_USER_EXAM =
+            "INSERT INTO user_exam (user_id, exam_id, percentage) VALUES (?, ?, ?) "
+            + "ON CONFLICT (exam_id, user_id) DO UPDATE SET percentage = EXCLUDED.percentage";
+
+    @Value("${certificate.batch.upsert-chunk-size:500}")
+    private int upsertChunkSize;
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateTemplateService.class);
+
+    private record CachedPreview(String date, RenderedPdf pdf) { }
+
+    private final Map<String, CachedPreview> previews = new ConcurrentHashMap<>();
+
+    // Shared across batches so concurrent requests cannot oversubscribe the node
+    private final ExecutorService workerPool;
 
     @Autowired
     public CertificateTemplateService(
-            @Value("${supabase.url}") String supabaseUrl,
-            @Value("${supabase.key}") String supabaseKey,
-            @Value("${supabase.bucket}") String bucket,
+            @Value("${certificate.batch.workers:0}") int workers,
             TemplateEngine templateEngine,
             UserRepository userRepository) {
-        this.supabaseUrl = supabaseUrl.endsWith("/") ? supabaseUrl.substring(0, supabaseUrl.length() - 1) : supabaseUrl;
-        this.supabaseKey = supabaseKey;
-        this.bucket = bucket;
         this.templateEngine = templateEngine;
         this.userRepository = userRepository;
+
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "certificate-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public byte[] generatePdf(CertificateRequest cert) throws IOException {
+    @PostConstruct
+    public void listenForTemplateChanges() {
+        // Anything derived from a template's old source goes when it is replaced
+        templateRegistry.addInvalidationListener(name -> {
+            evictPreview(name);
+            renderEngines.remove(name);
+        });
+        // Queued certificates are recorded as not stored until their upload lands
+        uploadOutbox.addLandedListener(landed -> {
+            if (landed.objectPath().startsWith("certificates/") && landed.objectPath().endsWith(".pdf")) {
+                jdbcTemplate.update(MARK_STORED, landed.objectPath());
+            }
+        });
+    }
+
+    /** Names of all templates that can be rendered: the bundled ones and those uploaded at runtime. */
+    public List<String> templateNames() {
+        return templateRegistry.names();
+    }
+
+    public boolean templateExists(String templateName) {
+        return templateRegistry.exists(templateName);
+    }
+
+    /**
+     * Uploads a new template or a new version of one. The source is compiled
+     * and rendered once with sample data before it is stored, so a broken
+     * template is rejected here rather than failing a batch later.
+     */
+    public void saveTemplate(String templateName, String description, String html,
+                             List<CertificateTemplateAsset> assets) throws IOException {
+        if (!CertificateTemplateRegistry.isValidName(templateName)) {
+            throw new IllegalArgumentException("Template names may only contain letters, digits, '-' and '_' (max 64)");
+        }
+        if (html == null || html.isBlank()) {
+            throw new IllegalArgumentException("Template source is empty");
+        }
+
+        CertificateTemplateRegistry.CompiledTemplate candidate = templateRegistry.compile(templateName, html, assets);
         try {
-            User user = userRepository.findById(cert.getUserId())
-                    .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + cert.getUserId()));
+            // A one-off engine, so the live template cache never sees an unvalidated version
+            TemplateEngine validator = new SpringTemplateEngine();
+            String rendered = validator.process(candidate.html(), context(sampleValues(issueDate())));
+            renderHtml(rendered, CertificateTemplateRegistry.assetStreams(candidate), null, OutputStream.nullOutputStream());
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Template does not render: " + e.getMessage(), e);
+        }
+
+        CertificateTemplate entity = certificateTemplateRepository.findFirstByName(templateName).orElseGet(() -> {
+            CertificateTemplate created = new CertificateTemplate();
+            created.setName(templateName);
+            return created;
+        });
+        if (description != null) {
+            entity.setDescription(description);
+        }
+        entity.setHtml(html);
+        entity.getAssets().clear();
+        entity.getAssets().addAll(assets);
+        entity.setUpdatedAt(LocalDateTime.now());
+        templateRegistry.install(certificateTemplateRepository.save(entity));
+    }
+
+    public byte[] generatePdf(CertificateRequest cert) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writePdf(cert, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Renders the certificate straight into {@code out}; nothing is buffered
+     * beyond what the renderer itself needs.
+     */
+    public void writePdf(CertificateRequest cert, OutputStream out) throws IOException {
+        User user = userRepository.findById(cert.getUserId())
+                .orElseThrow(() -> new IOException("Error generating PDF: User not found with ID: " + cert.getUserId()));
+        writePdf(cert, user, out);
+    }
+
+    /** Variant for callers that already loaded the user, e.g. a prefetched batch. */
+    public void writePdf(CertificateRequest cert, User user, OutputStream out) throws IOException {
+        writePdf(cert, user, issueDate(), out);
+    }
 
-            Context context = new Context();
-            context.setVariable("name", user.getName());
-            context.setVariable("email", user.getEmail());
-            context.setVariable("phone", user.getPhone());
-            context.setVariable("percentage", cert.getPercentage());
-            context.setVariable("subject", cert.getSubject());
-            context.setVariable("date", LocalDate.now().format(DateTimeFormatter.ofPattern("dd MMMM yyyy")));
+    /** Renders with a fixed issue date, e.g. the day a lazily rendered certificate was recorded. */
+    public void writePdf(CertificateRequest cert, User user, String issueDate, OutputStream out) throws IOException {
+        try {
+            Map<String, String> values = new HashMap<>();
+            values.put("name", user.getName());
+            values.put("email", user.getEmail());
+            values.put("phone", user.getPhone());
+            values.put("percentage", cert.getPercentage());
+            values.put("subject", cert.getSubject());
+            values.put("date", issueDate);
 
             String template = cert.getTemplateName();
             if (template == null || template.isBlank()) {
                 throw new IllegalArgumentException("Template name is missing in request");
             }
 
-            List<String> allowedTemplates = List.of("template1", "template2", "template3");
-            if (!allowedTemplates.contains(template)) {
+            if (!templateRegistry.exists(template)) {
                 throw new IllegalArgumentException("Invalid template name: " + template);
             }
 
-            String htmlContent = templateEngine.process(template, context);
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            PdfRendererBuilder builder = new PdfRendererBuilder();
-            builder.withHtmlContent(htmlContent, null);
-            builder.toStream(outputStream);
-            builder.useFastMode();
-            builder.run();
-
-            return outputStream.toByteArray();
+            if (CertificateTemplate.ENGINE_STAMP.equals(getRenderEngine(template))) {
+                try {
+                    // Stamped PDFs are small; buffering means a failure leaves nothing half-written in out
+                    ByteArrayOutputStream stamped = new ByteArrayOutputStream();
+                    stampPdf(template, values, stamped);
+                    if (isCompact()) {
+                        // PDFBox rewrote the background without object streams; pack it again
+                        pdfCompactor.compact(stamped.toByteArray(), out);
+                    } else {
+                        stamped.writeTo(out);
+                    }
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Stamping {} failed, rendering from HTML instead: {}", template, e.getMessage());
+                }
+            }
+            renderPdf(template, context(values), out);
         } catch (Exception e) {
             throw new IOException("Error generating PDF: " + e.getMessage(), e);
         }
     }
 
-    public void uploadToSupabase(byte[] pdfBytes, String subject, String studentName) throws IOException, InterruptedException {
-        String safeStudentName = studentName.trim().replaceAll("[^a-zA-Z0-9_-]", "_");
-        String safeSubject = subject.trim().replaceAll("[^a-zA-Z0-9_-]", "_");
+    /** Engine used for a template: {@code html} (default) or {@code stamp}. */
+    public String getRenderEngine(String templateName) {
+        return renderEngines.computeIfAbsent(templateName, name -> certificateTemplateRepository.findFirstByName(name)
+                .map(CertificateTemplate::getRenderEngine)
+                .filter(engine -> engine != null && !engine.isBlank())
+                .orElse(CertificateTemplate.ENGINE_HTML));
+    }
+
+    /**
+     * Switches a template between the HTML and stamping engines. A template
+     * is only switched to stamping once its layout could be measured.
+     */
+    public void setRenderEngine(String templateName, String engine) throws IOException {
+        if (!CertificateTemplate.ENGINE_HTML.equals(engine) && !CertificateTemplate.ENGINE_STAMP.equals(engine)) {
+            throw new IllegalArgumentException("Unknown render engine: " + engine);
+        }
+        if (CertificateTemplate.ENGINE_STAMP.equals(engine)) {
+            stampingRenderer.evict(templateName);
+            stampingRenderer.prepare(templateName, htmlLayout(templateName));
+        }
 
-        String filePath = "certificates/" + safeStudentName + "/" + safeSubject + ".pdf";
+        CertificateTemplate entity = certificateTemplateRepository.findFirstByName(templateName).orElseGet(() -> {
+            CertificateTemplate created = new CertificateTemplate();
+            created.setName(templateName);
+            return created;
+        });
+        entity.setRenderEngine(engine);
+        certificateTemplateRepository.save(entity);
+        renderEngines.put(templateName, engine);
+    }
 
-        // Construct full URL carefully (avoid double slashes)
-        String url = supabaseUrl + "/storage/v1/object/" + bucket + "/" + filePath;
+    /**
+     * Renders the sample certificate with both engines and reports the
+     * average time per certificate. The first (layout-building) render is
+     * excluded from the timings.
+     */
+    public Map<String, Object> benchmarkEngines(String templateName, int iterations) throws IOException {
+        Map<String, String> values = sampleValues(issueDate());
+        stampingRenderer.prepare(templateName, htmlLayout(templateName));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("apikey", supabaseKey)
-                .header("Authorization", "Bearer " + supabaseKey)
-                .header("Content-Type", "application/pdf")
-                .PUT(HttpRequest.BodyPublishers.ofByteArray(pdfBytes))
-                .build();
+        long htmlBytes = 0;
+        long stampBytes = 0;
+        long htmlNanos = 0;
+        long stampNanos = 0;
+        for (int i = 0; i <= iterations; i++) {
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            renderPdf(templateName, context(values), html);
+            long htmlTime = System.nanoTime() - start;
 
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+            ByteArrayOutputStream stamped = new ByteArrayOutputStream();
+            start = System.nanoTime();
+            stampPdf(templateName, values, stamped);
+            long stampTime = System.nanoTime() - start;
 
-        if (response.statusCode() != 200 && response.statusCode() != 201) {
-            throw new IOException("Failed to upload PDF. Status: " + response.statusCode() + ", Response: " + response.body());
+            if (i > 0) { // first round warms up both paths
+                htmlNanos += htmlTime;
+                stampNanos += stampTime;
+                htmlBytes = html.size();
+                stampBytes = stamped.size();
+            }
         }
+
+        double htmlMillis = htmlNanos / 1_000_000.0 / iterations;
+        double stampMillis = stampNanos / 1_000_000.0 / iterations;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("template", templateName);
+        report.put("iterations", iterations);
+        report.put("htmlAvgMillis", htmlMillis);
+        report.put("stampAvgMillis", stampMillis);
+        report.put("speedup", stampMillis > 0 ? htmlMillis / stampMillis : null);
+        report.put("htmlBytes", htmlBytes);
+        report.put("stampBytes", stampBytes);
+        report.put("currentEngine", getRenderEngine(templateName));
+        return report;
+    }
+
+    private void stampPdf(String template, Map<String, String> values, OutputStream out) throws IOException {
+        stampingRenderer.render(template, values, htmlLayout(template), out);
+    }
+
+    private StampingCertificateRenderer.LayoutRenderer htmlLayout(String template) {
+        return (values, mutator, out) -> renderPdf(template, context(values), mutator, out);
+    }
+
+    private static Context context(Map<String, String> values) {
+        Context context = new Context();
+        values.forEach(context::setVariable);
+        return context;
+    }
+
+    private static Map<String, String> sampleValues(String date) {
+        Map<String, String> values = new HashMap<>();
+        values.put("name", "John Doe");
+        values.put("email", "john@example.com");
+        values.put("phone", "1234567890");
+        values.put("percentage", "95%");
+        values.put("subject", "Mathematics");
+        values.put("date", date);
+        return values;
     }
 
-    
-    public void processCertificates(List<CertificateRequest> certificates) throws IOException, InterruptedException {
-        for (CertificateRequest cert : certificates) {
-            
+    /**
+     * Preview of a template filled with fixed sample data. The output only
+     * changes with the template and the printed date, so it is rendered once
+     * per template per day.
+     */
+    public RenderedPdf getPreview(String templateName) {
+        String today = issueDate();
+        CachedPreview cached = previews.get(templateName);
+        if (cached != null && cached.date().equals(today)) {
+            return cached.pdf();
+        }
+
+        byte[] pdf = renderPdf(templateName, context(sampleValues(today)));
+        RenderedPdf rendered = new RenderedPdf(pdf, strongEtag(pdf));
+        previews.put(templateName, new CachedPreview(today, rendered));
+        return rendered;
+    }
+
+    /**
+     * Renders the sample certificate through the template's current engine
+     * without caching the result. Used to warm up a freshly started node.
+     */
+    public void renderSample(String templateName, OutputStream out) throws IOException {
+        Map<String, String> values = sampleValues(issueDate());
+        if (CertificateTemplate.ENGINE_STAMP.equals(getRenderEngine(templateName))) {
+            stampPdf(templateName, values, out);
+        } else {
+            renderPdf(templateName, context(values), out);
+        }
+    }
+
+    /** Drops the cached preview so the next request re-renders the changed template. */
+    public void evictPreview(String templateName) {
+        previews.remove(templateName);
+        stampingRenderer.evict(templateName);
+    }
+
+    private byte[] renderPdf(String template, Context context) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            renderPdf(template, context, outputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private void renderPdf(String template, Context context, OutputStream out) throws IOException {
+        renderPdf(template, context, null, out);
+    }
+
+    private void renderPdf(String template, Context context, FSDOMMutator mutator, OutputStream out) throws IOException {
+        // Picks up a version uploaded on another node; a no-op between re-checks
+        templateRegistry.get(template);
+        String htmlContent = templateEngine.process(template, context);
+        renderHtml(htmlContent, templateRegistry.assetStreams(template), mutator, out);
+    }
+
+    private void renderHtml(String htmlContent, FSStreamFactory assets, FSDOMMutator mutator, OutputStream out) throws IOException {
+        PdfRendererBuilder builder = resourceCache.configure(new PdfRendererBuilder());
+        builder.useProtocolsStreamImplementation(assets, CertificateTemplateRegistry.ASSET_SCHEME);
+        builder.withHtmlContent(htmlContent, null);
+        if (mutator != null) {
+            builder.addDOMMutator(mutator);
+        }
+        builder.useFastMode();
+
+        if (isCompact()) {
+            // The compaction pass needs random access to the whole PDF; a temp file keeps it off the heap
+            Path rendered = Files.createTempFile("certificate-", ".pdf");
+            try {
+                try (OutputStream file = Files.newOutputStream(rendered)) {
+                    builder.toStream(file);
+                    builder.run();
+                }
+                pdfCompactor.compact(rendered, out);
+            } finally {
+                Files.deleteIfExists(rendered);
+            }
+            return;
+        }
+        // PDFBox closes the stream when it is done; callers such as ZIP archives need it left open
+        builder.toStream(StreamUtils.nonClosing(out));
+        builder.run();
+    }
+
+    private boolean isCompact() {
+        return "compact".equalsIgnoreCase(outputProfile);
+    }
+
+    /**
+     * Size of the sample certificate of every template with each engine
+     * under the current output profile, checked against the size budget.
+     */
+    public Map<String, Object> sizeReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("profile", isCompact() ? "compact" : "standard");
+        report.put("budgetBytes", sizeBudgetBytes > 0 ? sizeBudgetBytes : null);
+        List<Map<String, Object>> templates = new ArrayList<>();
+        boolean withinBudget = true;
+        for (String template : templateRegistry.names()) {
+            Map<String, Object> sizes = new LinkedHashMap<>();
+            sizes.put("template", template);
+            for (String engine : List.of(CertificateTemplate.ENGINE_HTML, CertificateTemplate.ENGINE_STAMP)) {
+                try {
+                    long bytes = sampleSize(template, engine);
+                    sizes.put(engine + "Bytes", bytes);
+                    withinBudget &= sizeBudgetBytes <= 0 || bytes <= sizeBudgetBytes;
+                } catch (IOException | RuntimeException e) {
+                    sizes.put(engine + "Error", e.getMessage());
+                }
+            }
+            templates.add(sizes);
+        }
+        report.put("templates", templates);
+        report.put("withinBudget", withinBudget);
+        return report;
+    }
+
+    /** Bytes of the sample certificate for a template rendered with the given engine. */
+    public long sampleSize(String templateName, String engine) throws IOException {
+        Map<String, String> values = sampleValues(issueDate());
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        if (CertificateTemplate.ENGINE_STAMP.equals(engine)) {
+            ByteArrayOutputStream stamped = new ByteArrayOutputStream();
+            stampPdf(templateName, values, stamped);
+            if (isCompact()) {
+                pdfCompactor.compact(stamped.toByteArray(), pdf);
+            } else {
+                stamped.writeTo(pdf);
+            }
+        } else {
+            renderPdf(templateName, context(values), pdf);
+        }
+        return pdf.size();
+    }
+
+    private static String strongEtag(byte[] content) {
+        return "\"" + HexFormat.of().formatHex(sha256(content), 0, 16) + "\"";
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Queues a certificate on local disk in the UploadOutbox (the file is
+     * copied and left in place), or uploads it directly when the outbox is off
+     * or full. Returns true if it was uploaded directly; a queued one is
+     * marked stored when its upload lands.
+     */
+    public boolean uploadCertificate(Path pdfFile, String subject, String studentName) throws IOException, InterruptedException {
+        String objectPath = certificatePath(subject, studentName);
+        if (uploadOutbox.enqueue(objectPath, "application/pdf", () -> Files.newInputStream(pdfFile),
+                Files.size(pdfFile), null) != null) {
+            return false;
+        }
+        objectStorage.upload(objectPath, "application/pdf", pdfFile, true);
+        return true;
+    }
+
+    /**
+     * Opens a stored certificate for reading, or returns {@code null} if the
+     * object does not exist. The caller must close the stream.
+     */
+    public InputStream openStoredCertificate(String objectPath) throws IOException, InterruptedException {
+        return objectStorage.open(objectPath);
+    }
+
+    @FunctionalInterface
+    public interface PdfContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Object path of a student's certificate for a subject, inside the bucket. */
+    public static String certificatePath(String subject, String studentName) {
+        return "certificates/" + pathKey(studentName) + "/" + pathKey(subject) + ".pdf";
+    }
+
+    /** A student name or subject as it appears in certificate paths. */
+    public static String pathKey(String name) {
+        return name.trim().replaceAll("[^a-zA-Z0-9_-]", "_");
+    }
+
+    /** Object path of the PNG thumbnail stored next to a certificate. */
+    public static String thumbnailPath(String subject, String studentName) {
+        String pdfPath = certificatePath(subject, studentName);
+        return pdfPath.substring(0, pdfPath.length() - ".pdf".length()) + ".png";
+    }
+
+    /**
+     * Renders the first page of a certificate as a PNG, {@code width}
+     * pixels wide (0 means the configured thumbnail width).
+     */
+    public byte[] renderThumbnail(byte[] pdf, int width) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            return renderThumbnail(document, width);
+        }
+    }
+
+    /** Same as {@link #renderThumbnail(byte[], int)}, reading the PDF from disk as needed. */
+    public byte[] renderThumbnail(Path pdf, int width) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf.toFile())) {
+            return renderThumbnail(document, width);
+        }
+    }
+
+    private byte[] renderThumbnail(PDDocument document, int width) throws IOException {
+        float pageWidth = document.getPage(0).getMediaBox().getWidth();
+        float scale = (width > 0 ? width : thumbnailWidth) / pageWidth;
+        BufferedImage image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    /**
+     * Processes a batch on the shared worker pool. Every request gets its own
+     * outcome, so one bad row no longer aborts the rest of the batch.
+     */
+    public CertificateBatchReport processCertificates(List<CertificateRequest> certificates) {
+        return processCertificates(certificates, false, result -> { });
+    }
+
+    /**
+     * Same as {@link #processCertificates(List)}, handing each result to
+     * {@code onResult} as soon as it is known. Unchanged certificates are
+     * skipped unless {@code force} is set.
+     */
+    public CertificateBatchReport processCertificates(List<CertificateRequest> certificates, boolean force,
+                                                      Consumer<CertificateResult> onResult) {
+        long started = System.currentTimeMillis();
+        List<CompletableFuture<CertificateResult>> futures = new ArrayList<>(certificates.size());
+        List<Integer> accepted = new ArrayList<>();
+        Set<UserExamId> seen = new HashSet<>();
+
+        for (int i = 0; i < certificates.size(); i++) {
+            CertificateRequest cert = certificates.get(i);
+            futures.add(null);
+
             if (cert.getUserId() == null) {
-                throw new IllegalArgumentException("User ID is null in certificate request: " + cert);
+                futures.set(i, CompletableFuture.completedFuture(CertificateResult.rejected(i, cert, "User ID is null")));
+            } else if (cert.getExamId() == null) {
+                futures.set(i, CompletableFuture.completedFuture(CertificateResult.rejected(i, cert, "Exam ID is null")));
+            } else if (!seen.add(new UserExamId(cert.getUserId(), cert.getExamId()))) {
+                futures.set(i, CompletableFuture.completedFuture(
+                        CertificateResult.skipped(i, cert, "Duplicate of an earlier row in this batch")));
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        // One query per entity type for the whole batch instead of two per row
+        Map<Long, User> users = userRepository.findAllById(
+                        accepted.stream().map(i -> certificates.get(i).getUserId()).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        Map<UUID, Exam> exams = ExamRepository.findAllById(
+                        accepted.stream().map(i -> certificates.get(i).getExamId()).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Exam::getId, Function.identity()));
+
+        Map<UserExamId, CertificateRecord> records = new HashMap<>();
+        if (!force && !accepted.isEmpty()) {
+            certificateRecordRepository.findByUserIdInAndExamIdIn(users.keySet(), exams.keySet())
+                    .forEach(record -> records.put(new UserExamId(record.getUserId(), record.getExamId()), record));
+        }
+
+        LocalDate issued = LocalDate.now();
+        Map<String, String> templateVersions = new HashMap<>();
+        List<ResultRow> rows = new ArrayList<>(accepted.size());
+        for (int index : accepted) {
+            CertificateRequest cert = certificates.get(index);
+            User user = users.get(cert.getUserId());
+            String failure = null;
+            Double percentage = parsePercentage(cert.getPercentage());
+            if (user == null) {
+                failure = "User not found with ID: " + cert.getUserId();
+            } else if (!exams.containsKey(cert.getExamId())) {
+                failure = "Exam not found with ID: " + cert.getExamId();
+            } else if (percentage == null) {
+                failure = "Invalid percentage value: " + cert.getPercentage();
+            }
+
+            if (failure != null) {
+                futures.set(index, CompletableFuture.completedFuture(CertificateResult.rejected(index, cert, failure)));
+                continue;
             }
 
-            if (cert.getExamId() == null) {
-                throw new IllegalArgumentException("Exam ID is null in certificate request: " + cert);
+            String fingerprint = fingerprint(cert, user,
+                    templateVersions.computeIfAbsent(cert.getTemplateName(), templateRegistry::version));
+            CertificateRecord existing = records.get(new UserExamId(cert.getUserId(), cert.getExamId()));
+            if (existing != null && fingerprint.equals(existing.getFingerprint())) {
+                futures.set(index, CompletableFuture.completedFuture(
+                        CertificateResult.skipped(index, cert, "Unchanged since last generation")));
+            } else {
+                rows.add(new ResultRow(index, cert, user, percentage, fingerprint, issued));
             }
-            User user = userRepository.findById(cert.getUserId())
-                    .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + cert.getUserId()));
+        }
+
+        Map<Integer, String> saveFailures = upsertUserExams(rows);
+        Set<Integer> thumbnailed = ConcurrentHashMap.newKeySet();
+        Set<Integer> queued = ConcurrentHashMap.newKeySet();
 
-            Exam exam = ExamRepository.findById(cert.getExamId())
-                    .orElseThrow(() -> new IllegalArgumentException("Exam not found with ID: " + cert.getExamId()));
+        for (ResultRow row : rows) {
+            String failure = saveFailures.get(row.index());
+            futures.set(row.index(), failure != null
+                    ? CompletableFuture.completedFuture(CertificateResult.failed(row.index(), row.cert(), failure))
+                    : CompletableFuture.supplyAsync(() -> processCertificate(row, thumbnailed, queued), workerPool));
+        }
 
-            // Save UserExam entry
-            UserExam userExam = new UserExam(user, exam);
+        List<CompletableFuture<CertificateResult>> notified = futures.stream()
+                .map(future -> future.thenApply(result -> notify(onResult, result)))
+                .toList();
+        List<CertificateResult> results = notified.stream().map(CompletableFuture::join).toList();
+
+        List<ResultRow> generated = rows.stream()
+                .filter(row -> results.get(row.index()).getStatus() == CertificateResult.Status.SUCCEEDED)
+                .toList();
+        saveCertificateRecords(generated, thumbnailed, queued);
+
+        CertificateBatchReport report = CertificateBatchReport.of(results, System.currentTimeMillis() - started);
+        logger.info("Certificate batch finished: {}", report.getMessage());
+        return report;
+    }
+
+    private record ResultRow(int index, CertificateRequest cert, User user, double percentage, String fingerprint,
+                             LocalDate issued) { }
+
+    private static Double parsePercentage(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the UserExam rows with JDBC batching, one round trip per chunk.
+     * Returns the batch indexes whose chunk could not be written.
+     */
+    private Map<Integer, String> upsertUserExams(List<ResultRow> rows) {
+        return batchUpsert(UPSERT_USER_EXAM, rows, (ps, row) -> {
+            ps.setLong(1, row.user().getId());
+            ps.setObject(2, row.cert().getExamId());
+            ps.setDouble(3, row.percentage());
+        });
+    }
+
+    private void saveCertificateRecords(List<ResultRow> rows, Set<Integer> thumbnailed, Set<Integer> queued) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<Integer, String> failures = batchUpsert(UPSERT_CERTIFICATE_RECORD, rows, (ps, row) -> {
+            ps.setLong(1, row.user().getId());
+            ps.setObject(2, row.cert().getExamId());
+            ps.setString(3, row.cert().getTemplateName());
+            ps.setString(4, row.user().getName());
+            ps.setString(5, row.cert().getSubject());
+            ps.setString(6, row.cert().getPercentage());
+            ps.setString(7, certificatePath(row.cert().getSubject(), row.user().getName()));
+            ps.setBoolean(8, !isLazy() && !queued.contains(row.index()));
+            ps.setString(9, row.fingerprint());
+            ps.setTimestamp(10, now);
+            ps.setString(11, thumbnailed.contains(row.index())
+                    ? thumbnailPath(row.cert().getSubject(), row.user().getName()) : null);
+            ps.setObject(12, row.issued());
+            ps.setString(13, pathKey(row.user().getName()));
+            ps.setString(14, pathKey(row.cert().getSubject()));
+        });
+        if (!failures.isEmpty()) {
+            // The PDFs are stored; without a record they are simply regenerated next time
+            logger.warn("{} certificate records could not be saved", failures.size());
+        }
+        // Uploads that landed before their record existed found nothing to mark
+        List<Object[]> landed = rows.stream()
+                .filter(row -> queued.contains(row.index()) && !failures.containsKey(row.index()))
+                .map(row -> new Object[] {certificatePath(row.cert().getSubject(), row.user().getName())})
+                .toList();
+        if (!landed.isEmpty()) {
+            try {
+                jdbcTemplate.batchUpdate(MARK_LANDED, landed);
+            } catch (DataAccessException e) {
+                logger.warn("Could not mark landed certificates as stored: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Map<Integer, String> batchUpsert(String sql, List<ResultRow> rows,
+                                             ParameterizedPreparedStatementSetter<ResultRow> setter) {
+        Map<Integer, String> failures = new HashMap<>();
+        for (int from = 0; from < rows.size(); from += upsertChunkSize) {
+            List<ResultRow> chunk = rows.subList(from, Math.min(rows.size(), from + upsertChunkSize));
+            try {
+                jdbcTemplate.batchUpdate(sql, chunk, chunk.size(), setter);
+            } catch (DataAccessException e) {
+                logger.warn("Batch write of {} rows failed: {}", chunk.size(), e.getMessage());
+                String reason = "Could not save exam result: " + e.getMostSpecificCause().getMessage();
+                chunk.forEach(row -> failures.put(row.index(), reason));
+            }
+        }
+        return failures;
+    }
+
+    /** SHA-256 of everything printed on the certificate except the issue date, plus the template version. */
+    static String fingerprint(CertificateRequest cert, User user, String templateVersion) {
+        String input = String.join("\u001f",
+                user.getName(), user.getEmail(), user.getPhone(),
+                cert.getPercentage(), cert.getSubject(), cert.getTemplateName(), templateVersion);
+        return HexFormat.of().formatHex(sha256(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String issueDate() {
+        return issueDate(LocalDate.now());
+    }
+
+    /** The date as printed on certificates. */
+    public static String issueDate(LocalDate date) {
+        return date.format(DateTimeFormatter.ofPattern("dd MMMM yyyy"));
+    }
+
+    private static CertificateResult notify(Consumer<CertificateResult> onResult, CertificateResult result) {
+        try {
+            onResult.accept(result);
+        } catch (Exception e) {
+            logger.warn("Certificate result listener failed for item {}: {}", result.getIndex(), e.getMessage());
+        }
+        return result;
+    }
+
+    private CertificateResult processCertificate(ResultRow row, Set<Integer> thumbnailed, Set<Integer> queued) {
+        int index = row.index();
+        CertificateRequest cert = row.cert();
+        User user = row.user();
+        String issueDate = issueDate(row.issued());
+        try {
+            if (!templateRegistry.exists(cert.getTemplateName())) {
+                return CertificateResult.rejected(index, cert, "Invalid template name: " + cert.getTemplateName());
+            }
+            if (isLazy()) {
+                // Nothing to render yet; the record written after the batch is all a download needs
+                return CertificateResult.succeeded(index, cert);
+            }
+            long size;
+            // Rendered to disk, not the heap: the outbox takes the file over, and the thumbnail reads it a second time
+            Path pdfFile = Files.createTempFile("certificate-", ".pdf");
             try {
-                double percentage = Double.parseDouble(cert.getPercentage());
-                userExam.setPercentage(percentage);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Invalid percentage value: " + cert.getPercentage());
+                try (OutputStream file = Files.newOutputStream(pdfFile)) {
+                    writePdf(cert, user, issueDate, file);
+                }
+                size = Files.size(pdfFile);
+                if (thumbnailsEnabled) {
+                    storeThumbnail(row, () -> renderThumbnail(pdfFile, 0), thumbnailed);
+                }
+                String objectPath = certificatePath(cert.getSubject(), user.getName());
+                if (uploadOutbox.enqueue(objectPath, "application/pdf", pdfFile, null) != null) {
+                    queued.add(index);
+                } else {
+                    objectStorage.upload(objectPath, "application/pdf", pdfFile, true);
+                }
+            } finally {
+                Files.deleteIfExists(pdfFile);
             }
+            if (sizeBudgetBytes > 0 && size > sizeBudgetBytes) {
+                logger.warn("Certificate {} (user {}, template {}) is {} bytes, over the {} byte budget",
+                        index, cert.getUserId(), cert.getTemplateName(), size, sizeBudgetBytes);
+            }
+            return CertificateResult.succeeded(index, cert, size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CertificateResult.failed(index, cert, "Interrupted");
+        } catch (Exception e) {
+            logger.warn("Certificate {} (user {}, exam {}) failed: {}", index, cert.getUserId(), cert.getExamId(), e.getMessage());
+            return CertificateResult.failed(index, cert, e.getMessage());
+        }
+    }
 
-            userExamRepository.save(userExam); // persist UserExam
+    @FunctionalInterface
+    private interface ThumbnailSource {
+        byte[] render() throws IOException;
+    }
 
-            byte[] pdfBytes = generatePdf(cert);
+    private void storeThumbnail(ResultRow row, ThumbnailSource thumbnail, Set<Integer> thumbnailed)
+            throws InterruptedException {
+        CertificateRequest cert = row.cert();
+        try {
+            // Replaces the previous thumbnail of a regenerated certificate
+            upload(thumbnailPath(cert.getSubject(), row.user().getName()), "image/png", thumbnail.render());
+            thumbnailed.add(row.index());
+        } catch (IOException e) {
+            // The certificate itself is stored; galleries fall back to the on-demand thumbnail
+            logger.warn("Thumbnail for certificate {} (user {}) failed: {}", row.index(), cert.getUserId(), e.getMessage());
+        }
+    }
 
-            uploadToSupabase(pdfBytes, cert.getSubject(), user.getName());
+    // Outbox uploads are sent with upsert, like the direct fallback
+    private void upload(String objectPath, String contentType, byte[] content) throws IOException, InterruptedException {
+        if (uploadOutbox.enqueue(objectPath, contentType, () -> new ByteArrayInputStream(content), content.length, null) == null) {
+            objectStorage.upload(objectPath, contentType, content, true);
         }
     }
+
+    private boolean isLazy() {
+        return "lazy".equalsIgnoreCase(renderMode);
+    }
+
+    @PreDestroy
+    public void shutdownWorkers() {
+        workerPool.shutdown();
+    }
 }
@@ -0,0 +1,92 @@
+package com.example.demo.Service;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Renders every template a few times after startup so the first real request
+ * is not the slow one; see CertificateWarmupHealthIndicator.
+ */
+@Service
+public class CertificateWarmupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateWarmupService.class);
+
+    @Autowired
+    private CertificateTemplateService certificateService;
+
+    @Value("${certificate.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${certificate.warmup.iterations:5}")
+    private int iterations;
+
+    private final AtomicInteger rendered = new AtomicInteger();
+    private volatile int planned;
+    private volatile boolean finished;
+    private volatile String failure;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || iterations <= 0) {
+            finished = true;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "certificate-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        long started = System.currentTimeMillis();
+        try {
+            // Includes templates uploaded at runtime, read once so the plan does not shift mid-way
+            List<String> templates = certificateService.templateNames();
+            planned = iterations * templates.size();
+            for (int i = 0; i < iterations; i++) {
+                for (String template : templates) {
+                    long renderStarted = System.currentTimeMillis();
+                    certificateService.renderSample(template, OutputStream.nullOutputStream());
+                    rendered.incrementAndGet();
+                    if (i == 0) {
+                        logger.info("Warm-up: first render of {} took {} ms", template, System.currentTimeMillis() - renderStarted);
+                    }
+                }
+            }
+            // The preview endpoint is the first thing admins open after a deploy
+            templates.forEach(certificateService::getPreview);
+            logger.info("Certificate warm-up finished: {} renders in {} ms", rendered.get(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            // A broken template must not keep the node out of rotation; real requests report the error
+            failure = e.getMessage();
+            logger.warn("Certificate warm-up stopped early after {} renders: {}", rendered.get(), e.getMessage());
+        } finally {
+            finished = true;
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getRendered() {
+        return rendered.get();
+    }
+
+    public int getPlanned() {
+        return planned;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.Repository.ExamRepository;
+import com.example.demo.Repository.UploadSessionRepository;
+import com.example.demo.dto.UploadSessionRequest;
+import com.example.demo.dto.UploadSessionStatus;
+import com.example.demo.model.Exam;
+import com.example.demo.model.UploadSession;
+
+/**
+ * Resumable syllabus uploads: chunks in any order, each checksummed and moved
+ * into place when complete, joined and handed to StoredObjectService on commit.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final String CHUNK_PREFIX = "chunk-";
+    private static final long MIN_CHUNK_BYTES = 64 * 1024;
+    private static final int ASSEMBLY_BUFFER_BYTES = 1024 * 1024;
+
+    /** What a commit stored, and the exam's syllabus status afterwards. */
+    public record Committed(String url, String status) { }
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private ExamRepository examRepository;
+
+    @Autowired
+    private StoredObjectService storedObjectService;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${storage.chunked.dir:${java.io.tmpdir}/chunked-uploads}")
+    private String uploadDir;
+
+    // Sessions are served by the node holding their chunks; empty generates one kept in storage.chunked.dir
+    @Value("${storage.chunked.node:${storage.outbox.node:}}")
+    private String configuredNode;
+
+    @Value("${storage.chunked.chunk-size:8388608}")
+    private long defaultChunkSize;
+
+    @Value("${storage.chunked.max-chunk-size:67108864}")
+    private long maxChunkSize;
+
+    @Value("${storage.chunked.max-size:2147483648}")
+    private long maxSize;
+
+    @Value("${storage.chunked.expire-hours:24}")
+    private long expireHours;
+
+    @Value("${storage.chunked.purge-interval-minutes:60}")
+    private long purgeIntervalMinutes;
+
+    private Path root;
+    private String node;
+    private final Set<UUID> committing = ConcurrentHashMap.newKeySet();
+
+    // Striped by session and chunk index: a chunk's file is swapped under its stripe
+    private final Object[] chunkLocks = new Object[64];
+
+    private final ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chunked-upload-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void open() throws IOException {
+        root = LocalNode.directory(uploadDir, "storage.chunked.dir");
+        node = LocalNode.nodeId(configuredNode, root);
+        for (int i = 0; i < chunkLocks.length; i++) {
+            chunkLocks[i] = new Object();
+        }
+        long every = Math.max(purgeIntervalMinutes, 1);
+        purger.scheduleWithFixedDelay(() -> {
+            try {
+                purgeExpired();
+            } catch (Exception e) {
+                logger.warn("Could not purge expired uploads: {}", e.getMessage());
+            }
+        }, every, every, TimeUnit.MINUTES);
+    }
+
+    public UploadSession create(UUID examId, UploadSessionRequest request) throws IOException {
+        if (!examRepository.existsById(examId)) {
+            throw new IllegalArgumentException("Exam not found with id: " + examId);
+        }
+        long size = request.getSize() != null ? request.getSize() : -1;
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + maxSize + " bytes");
+        }
+        long chunkSize = request.getChunkSize() != null ? request.getChunkSize() : defaultChunkSize;
+        if (chunkSize < MIN_CHUNK_BYTES || chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("chunkSize must be between " + MIN_CHUNK_BYTES + " and " + maxChunkSize + " bytes");
+        }
+        String sha256 = request.getSha256();
+        if (sha256 != null && !sha256.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("sha256 must be 64 hex digits");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setExamId(examId);
+        session.setNode(node);
+        session.setFileName(request.getFileName());
+        session.setContentType(request.getContentType() != null ? request.getContentType() : "application/pdf");
+        session.setSize(size);
+        session.setChunkSize(chunkSize);
+        session.setSha256(sha256 != null ? sha256.toLowerCase() : null);
+        session.setCreatedAt(LocalDateTime.now());
+        session.setExpiresAt(session.getCreatedAt().plusHours(expireHours));
+        session = uploadSessionRepository.save(session);
+        Files.createDirectories(dirFor(session));
+        return session;
+    }
+
+    /** The exam's live session with this id; expired sessions are not found. */
+    public Optional<UploadSession> find(UUID examId, UUID uploadId) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getExamId().equals(examId))
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    public UploadSessionStatus status(UploadSession session) throws IOException {
+        checkNode(session);
+        TreeMap<Integer, UploadSessionStatus.Chunk> chunks = chunks(session);
+        UploadSessionStatus status = new UploadSessionStatus();
+        status.setUploadId(session.getId());
+        status.setExamId(session.getExamId());
+        status.setFileName(session.getFileName());
+        status.setSize(session.getSize());
+        status.setChunkSize(session.getChunkSize());
+        status.setChunkCount(chunkCount(session));
+        status.setReceived(new ArrayList<>(chunks.values()));
+        status.setReceivedBytes(chunks.values().stream().mapToLong(UploadSessionStatus.Chunk::getSize).sum());
+        List<Integer> missing = new ArrayList<>();
+        for (int index = 0; index < chunkCount(session); index++) {
+            if (!chunks.containsKey(index)) {
+                missing.add(index);
+            }
+        }
+        status.setMissing(missing);
+        status.setExpiresAt(session.getExpiresAt());
+        return status;
+    }
+
+    /**
+     * Stores chunk {@code index} from {@code body}, replacing an earlier copy.
+     * The body must be exactly the chunk's length and, when
+     * {@code expectedSha256} is given, match it; otherwise nothing is kept.
+     */
+    public UploadSessionStatus.Chunk putChunk(UploadSession session, int index, InputStream body, String expectedSha256)
+            throws IOException {
+        checkNode(session);
+        if (index < 0 || index >= chunkCount(session)) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (chunkCount(session) - 1));
+        }
+        long offset = index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getSize() - offset);
+
+        Path dir = dirFor(session);
+        Path temp = Files.createTempFile(dir, "." + CHUNK_PREFIX + index + ".", ".tmp");
+        try {
+            MessageDigest digest = sha256Digest();
+            long received = 0;
+            try (ReadableByteChannel in = Channels.newChannel(new DigestInputStream(body, digest));
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                // Read one byte past the chunk so an oversized body is noticed without reading all of it
+                while (received <= expected) {
+                    long copied = out.transferFrom(in, received, expected + 1 - received);
+                    if (copied == 0) {
+                        break; // end of body
+                    }
+                    received += copied;
+                }
+                out.force(true);
+            }
+            if (received != expected) {
+                throw new IllegalArgumentException("Chunk " + index + " must be " + expected + " bytes, got "
+                        + (received > expected ? "more" : received));
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                throw new IllegalArgumentException("Chunk " + index + " does not match its checksum (got " + sha256 + ")");
+            }
+
+            Path file = dir.resolve(CHUNK_PREFIX + index + "-" + sha256);
+            // A chunk sent again with different bytes replaces the earlier copy. Two PUTs of the same
+            // chunk at once would otherwise each delete the file the other just moved into place
+            synchronized (chunkLocks[Math.floorMod(session.getId().hashCode() * 31 + index, chunkLocks.length)]) {
+                move(temp, file);
+                try (Stream<Path> files = Files.list(dir)) {
+                    for (Path other : files.filter(other -> indexOf(other) == index && !other.equals(file)).toList()) {
+                        Files.deleteIfExists(other);
+                    }
+                }
+            }
+
+            UploadSessionStatus.Chunk chunk = new UploadSessionStatus.Chunk();
+            chunk.setIndex(index);
+            chunk.setOffset(offset);
+            chunk.setSize(expected);
+            chunk.setSha256(sha256);
+            return chunk;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Joins the chunks and stores the file as the exam's syllabus. The chunks
+     * are kept until the transaction commits, so a failed commit can be repeated.
+     */
+    public Committed commit(UploadSession session) throws IOException, InterruptedException {
+        checkNode(session);
+        if (!committing.add(session.getId())) {
+            throw new IllegalStateException("Upload " + session.getId() + " is already being committed");
+        }
+        try {
+            TreeMap<Integer, UploadSessionStatus.Chunk> chunks = chunks(session);
+            if (chunks.size() != chunkCount(session)) {
+                throw new IllegalStateException("Upload " + session.getId() + " has " + chunks.size() + " of "
+                        + chunkCount(session) + " chunks");
+            }
+            if (!examRepository.existsById(session.getExamId())) {
+                throw new IllegalArgumentException("Exam not found with id: " + session.getExamId());
+            }
+
+            Path dir = dirFor(session);
+            Path file = dir.resolve(".assembled");
+            String sha256 = assemble(dir, chunks, file);
+            if (session.getSha256() != null && !sha256.equals(session.getSha256())) {
+                throw new IllegalArgumentException("Uploaded file does not match its checksum (got " + sha256 + ")");
+            }
+
+            Committed committed;
+            try {
+                committed = transactionTemplate.execute(status -> store(session, file, sha256));
+            } catch (StoreFailure e) {
+                if (e.getCause() instanceof InterruptedException interrupted) {
+                    throw interrupted;
+                }
+                throw (IOException) e.getCause();
+            }
+            logger.info("Committed upload {} of {} bytes as {}", session.getId(), session.getSize(), committed.url());
+            return committed;
+        } finally {
+            committing.remove(session.getId());
+        }
+    }
+
+    // Checked failures inside the transaction callback, unwrapped again by commit
+    private static class StoreFailure extends RuntimeException {
+        StoreFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    // Runs in the commit transaction: the outbox row, the exam and the session go together
+    private Committed store(UploadSession session, Path file, String sha256) {
+        Exam exam = examRepository.findById(session.getExamId())
+                .orElseThrow(() -> new IllegalArgumentException("Exam not found with id: " + session.getExamId()));
+        String url;
+        try {
+            url = storedObjectService.upload("syllabus", session.getFileName(), session.getContentType(),
+                    file, sha256).url();
+        } catch (IOException | InterruptedException e) {
+            throw new StoreFailure(e);
+        }
+        exam.setSyllabus(url);
+        exam.setSyllabusStatus(uploadOutbox.statusOf(url));
+        examRepository.save(exam);
+        uploadSessionRepository.delete(session);
+        Path dir = dirFor(session);
+        afterCommit(() -> deleteQuietly(dir));
+        return new Committed(url, exam.getSyllabusStatus());
+    }
+
+    public void abort(UploadSession session) {
+        uploadSessionRepository.delete(session);
+        if (node.equals(session.getNode())) {
+            deleteQuietly(dirFor(session));
+        }
+    }
+
+    /**
+     * Drops expired sessions of every node, so those of a node that is gone
+     * do not linger, and chunk directories on this node whose session no
+     * longer exists (expired, or aborted through another node).
+     */
+    void purgeExpired() throws IOException {
+        for (UploadSession session : uploadSessionRepository.findByExpiresAtBefore(LocalDateTime.now())) {
+            if (committing.contains(session.getId())) {
+                continue;
+            }
+            logger.info("Dropping expired upload {}", session.getId());
+            abort(session);
+        }
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.toList()) {
+                UUID id;
+                try {
+                    id = UUID.fromString(dir.getFileName().toString());
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!uploadSessionRepository.existsById(id)) {
+                    deleteQuietly(dir);
+                }
+            }
+        }
+    }
+
+    private void checkNode(UploadSession session) {
+        if (!node.equals(session.getNode())) {
+            throw new IllegalStateException("Upload " + session.getId() + " is held by node " + session.getNode());
+        }
+    }
+
+    private static int chunkCount(UploadSession session) {
+        return (int) ((session.getSize() + session.getChunkSize() - 1) / session.getChunkSize());
+    }
+
+    private Path dirFor(UploadSession session) {
+        return root.resolve(session.getId().toString());
+    }
+
+    private TreeMap<Integer, UploadSessionStatus.Chunk> chunks(UploadSession session) throws IOException {
+        TreeMap<Integer, UploadSessionStatus.Chunk> chunks = new TreeMap<>();
+        Path dir = dirFor(session);
+        if (!Files.isDirectory(dir)) {
+            return chunks;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                int index = indexOf(file);
+                if (index < 0) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                UploadSessionStatus.Chunk chunk = new UploadSessionStatus.Chunk();
+                chunk.setIndex(index);
+                chunk.setOffset(index * session.getChunkSize());
+                chunk.setSize(Files.size(file));
+                chunk.setSha256(name.substring(name.lastIndexOf('-') + 1));
+                chunks.put(index, chunk);
+            }
+        }
+        return chunks;
+    }
+
+    // Chunk files are named chunk-<index>-<sha256>; -1 for anything else
+    private static int indexOf(Path file) {
+        String name = file.getFileName().toString();
+        int dash = name.lastIndexOf('-');
+        if (!name.startsWith(CHUNK_PREFIX) || dash <= CHUNK_PREFIX.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(CHUNK_PREFIX.length(), dash));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Joins the chunks into file and returns its SHA-256, reading every byte once
+    private static String assemble(Path dir, TreeMap<Integer, UploadSessionStatus.Chunk> chunks, Path file)
+            throws IOException {
+        MessageDigest digest = sha256Digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ASSEMBLY_BUFFER_BYTES);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (UploadSessionStatus.Chunk chunk : chunks.values()) {
+                Path part = dir.resolve(CHUNK_PREFIX + chunk.getIndex() + "-" + chunk.getSha256());
+                try (FileChannel in = FileChannel.open(part)) {
+                    while (in.read(buffer) >= 0) {
+                        buffer.flip();
+                        digest.update(buffer.duplicate());
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+            }
+            // The outbox answers for these bytes once they are moved into its spool
+            out.force(true);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete upload directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdownNow();
+    }
+}
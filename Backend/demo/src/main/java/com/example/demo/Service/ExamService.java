@@ -17,6 +17,12 @@ public class ExamService {
     @Autowired
     private ExamRepository examRepository;
 
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
+
     public List<Exam> getAllExams() {
         return examRepository.findAll();
     }
@@ -27,6 +33,9 @@ public class ExamService {
 
     @Transactional
     public Exam saveExam(Exam exam) {
+        exam.setImageVariants(imageVariantService.variantsFor(exam.getImage()));
+        exam.setImageStatus(uploadOutbox.statusOf(exam.getImage()));
+        exam.setSyllabusStatus(uploadOutbox.statusOf(exam.getSyllabus()));
         return examRepository.save(exam);
     }
 
@@ -36,6 +45,9 @@ public class ExamService {
             throw new IllegalArgumentException("Exam not found with id: " + id);
         }
         exam.setId(id);
+        exam.setImageVariants(imageVariantService.variantsFor(exam.getImage()));
+        exam.setImageStatus(uploadOutbox.statusOf(exam.getImage()));
+        exam.setSyllabusStatus(uploadOutbox.statusOf(exam.getSyllabus()));
         return examRepository.save(exam);
     }
 
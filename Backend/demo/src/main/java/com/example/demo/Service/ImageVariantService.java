@@ -0,0 +1,387 @@
+package com.example.demo.Service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.w3c.dom.Node;
+
+import com.example.demo.Repository.ImageVariantSetRepository;
+import com.example.demo.model.ImageVariantSet;
+
+/**
+ * Smaller copies of uploaded blog and exam images, made in the background:
+ * JPEG, or PNG with transparency (ImageIO cannot write WebP or AVIF).
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private static final List<String> RASTER_TYPES = List.of("image/jpeg", "image/jpg", "image/png");
+
+    // Replace the variants of every row still pointing at the original
+    private static final String[][] ATTACH_SQL = {
+            {"DELETE FROM exam_image_variants WHERE exam_id IN (SELECT id FROM exam WHERE image = ?)",
+                    "INSERT INTO exam_image_variants (exam_id, width, url) SELECT id, ?, ? FROM exam WHERE image = ?"},
+            {"DELETE FROM blog_image_variants WHERE blog_id IN (SELECT id FROM blog WHERE image_url = ?)",
+                    "INSERT INTO blog_image_variants (blog_id, width, url) SELECT id, ?, ? FROM blog WHERE image_url = ?"},
+    };
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Autowired
+    private StoredObjectService storedObjectService;
+
+    @Autowired
+    private ImageVariantSetRepository variantSetRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${image.variants.enabled:true}")
+    private boolean enabled;
+
+    @Value("${image.variants.widths:320,640,1280}")
+    private List<Integer> widths;
+
+    @Value("${image.variants.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Decoding is refused above this, so a small file claiming huge dimensions cannot exhaust the heap
+    @Value("${image.variants.max-pixels:40000000}")
+    private long maxPixels;
+
+    @Value("${image.variants.threads:1}")
+    private int threads;
+
+    private ExecutorService pipeline;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger count = new AtomicInteger();
+        pipeline = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, "image-variants-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pipeline.shutdownNow();
+    }
+
+    /**
+     * Stores an uploaded image in {@code folder} and queues its variants,
+     * after the caller's transaction commits if there is one. Returns the
+     * public URL of the original; an image that was uploaded before gets its
+     * existing URL, and already has its variants.
+     */
+    public String upload(MultipartFile file, String folder) throws IOException, InterruptedException {
+        StoredObjectService.Stored stored = storedObjectService.upload(file, folder);
+        String contentType = file.getContentType() != null ? file.getContentType().toLowerCase() : "";
+        if (!enabled || stored.existing() || !RASTER_TYPES.contains(contentType)) {
+            return stored.url();
+        }
+
+        // The multipart part is gone once the request ends, so the pipeline works from its own copy
+        Path source = Files.createTempFile("image-upload-", ".tmp");
+        try {
+            file.transferTo(source);
+        } catch (IOException | RuntimeException e) {
+            // The original is stored and still served; it just gets no variants
+            deleteQuietly(source);
+            logger.warn("Could not queue variants of {}: {}", stored.objectPath(), e.getMessage());
+            return stored.url();
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            queue(source, stored.objectPath(), stored.url());
+            return stored.url();
+        }
+        // Started after the commit, so attaching finds the post or exam saved with this URL in the same transaction
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                queue(source, stored.objectPath(), stored.url());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    deleteQuietly(source);
+                }
+            }
+        });
+        return stored.url();
+    }
+
+    private void queue(Path source, String objectPath, String url) {
+        try {
+            pipeline.execute(() -> process(source, objectPath, url));
+        } catch (RuntimeException e) {
+            deleteQuietly(source);
+            logger.warn("Could not queue variants of {}: {}", objectPath, e.getMessage());
+        }
+    }
+
+    /** Variant URLs by width for an image URL; empty until its variants are ready. */
+    public Map<Integer, String> variantsFor(String url) {
+        if (url == null || url.isEmpty()) {
+            return new TreeMap<>();
+        }
+        return variantSetRepository.findById(url)
+                .map(set -> (Map<Integer, String>) new TreeMap<>(set.getVariants()))
+                .orElseGet(TreeMap::new);
+    }
+
+    private void process(Path source, String objectPath, String url) {
+        try {
+            Map<Integer, String> variants = createVariants(source, objectPath);
+            if (variants.isEmpty()) {
+                return;
+            }
+            ImageVariantSet set = new ImageVariantSet();
+            set.setSourceUrl(url);
+            set.setVariants(variants);
+            set.setCreatedAt(LocalDateTime.now());
+            variantSetRepository.save(set);
+            attach(url, variants);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Pages keep using the original
+            logger.warn("Could not create variants of {}: {}", objectPath, e.getMessage());
+        } finally {
+            deleteQuietly(source);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // temp dir is cleaned up eventually
+        }
+    }
+
+    private Map<Integer, String> createVariants(Path source, String objectPath) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        BufferedImage image = decode(source);
+        boolean alpha = image.getColorModel().hasAlpha();
+        String extension = alpha ? "png" : "jpg";
+        int dot = objectPath.lastIndexOf('.');
+        String base = dot > objectPath.lastIndexOf('/') ? objectPath.substring(0, dot) : objectPath;
+
+        // Largest first, each scaled from the one before, so no step shrinks by much more than half
+        Map<Integer, String> variants = new TreeMap<>();
+        BufferedImage previous = image;
+        long totalBytes = 0;
+        for (int width : widths.stream().distinct().sorted(Comparator.reverseOrder()).toList()) {
+            if (width <= 0 || width >= image.getWidth()) {
+                continue; // never upscale; the original serves those sizes
+            }
+            previous = scale(previous, width, alpha);
+            byte[] encoded = alpha ? encodePng(previous) : encodeJpeg(previous);
+            String path = base + "-" + width + "w." + extension;
+            objectStorage.upload(path, alpha ? "image/png" : "image/jpeg", encoded, true);
+            variants.put(width, objectStorage.publicUrl(path));
+            totalBytes += encoded.length;
+        }
+        logger.info("Created {} variants of {} ({}x{}, {} bytes) in {} ms", variants.size(), objectPath,
+                image.getWidth(), image.getHeight(), totalBytes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return variants;
+    }
+
+    private void attach(String url, Map<Integer, String> variants) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (String[] sql : ATTACH_SQL) {
+                    jdbcTemplate.update(sql[0], url);
+                    variants.forEach((width, variantUrl) -> jdbcTemplate.update(sql[1], width, variantUrl, url));
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Could not attach variants of {}: {}", url, e.getMessage());
+        }
+    }
+
+    private BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("not a readable image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException(reader.getWidth(0) + "x" + reader.getHeight(0) + " is over the "
+                            + maxPixels + " pixel limit");
+                }
+                BufferedImage image = reader.read(0);
+                boolean jpeg = "jpeg".equalsIgnoreCase(reader.getFormatName());
+                return jpeg ? orient(image, exifOrientation(reader)) : image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        while (true) {
+            int next = Math.max(width, current.getWidth() / 2);
+            int height = Math.max(1, (int) Math.round((double) current.getHeight() * next / current.getWidth()));
+            BufferedImage scaled = new BufferedImage(next, height, type);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, next, height, null);
+            graphics.dispose();
+            current = scaled;
+            if (next == width) {
+                return current;
+            }
+        }
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    // Phone cameras store pixels sideways and say so in EXIF; browsers honour that, and the variants carry no EXIF
+    private static int exifOrientation(ImageReader reader) {
+        try {
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Node markers = ((IIOMetadataNode) metadata.getAsTree("javax_imageio_jpeg_image_1.0"))
+                    .getElementsByTagName("markerSequence").item(0);
+            for (Node marker = markers != null ? markers.getFirstChild() : null; marker != null; marker = marker.getNextSibling()) {
+                if (marker instanceof IIOMetadataNode node && "225".equals(node.getAttribute("MarkerTag"))
+                        && node.getUserObject() instanceof byte[] app1) {
+                    int orientation = orientationTag(app1);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // unusual metadata; treat as upright
+        }
+        return 1;
+    }
+
+    // APP1 payload: "Exif\0\0", then a TIFF header and IFD0, where tag 0x0112 holds the orientation
+    private static int orientationTag(byte[] app1) {
+        if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(app1, 6, app1.length - 6).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return 0;
+        }
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                break;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                return tiff.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        return 0;
+    }
+
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { transform.scale(-1, 1); transform.translate(-w, 0); }
+            case 3 -> { transform.translate(w, h); transform.rotate(Math.PI); }
+            case 4 -> { transform.scale(1, -1); transform.translate(0, -h); }
+            case 5 -> transform.setTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> { transform.translate(h, 0); transform.rotate(Math.PI / 2); }
+            case 7 -> transform.setTransform(0, -1, -1, 0, h, w);
+            case 8 -> { transform.translate(0, w); transform.rotate(3 * Math.PI / 2); }
+            default -> {
+                return image;
+            }
+        }
+        boolean swap = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swap ? h : w, swap ? w : h,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        graphics.drawImage(image, transform, null);
+        graphics.dispose();
+        return oriented;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node identity and retry timing shared by the services that keep work on
+ * this node's disk (the upload outbox, chunked uploads) or lease it (the
+ * certificate queue worker).
+ */
+final class LocalNode {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalNode.class);
+
+    private LocalNode() {
+    }
+
+    /** Directory for files that must outlive a restart; warns when it is relative or under the temp dir. */
+    static Path directory(String configured, String property) throws IOException {
+        Path dir = Path.of(configured).toAbsolutePath().normalize();
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        if (!Path.of(configured).isAbsolute() || dir.startsWith(tmp)) {
+            logger.warn("{} is {}; set it to an absolute directory on persistent disk", property, dir);
+        }
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * The configured node id, or one generated on first start and kept in
+     * {@code dir}, so it stays the same across restarts for as long as the
+     * files it owns are there.
+     */
+    static String nodeId(String configured, Path dir) throws IOException {
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        Path file = dir.resolve("node-id");
+        if (Files.exists(file)) {
+            String id = Files.readString(file).trim();
+            if (!id.isEmpty()) {
+                return id;
+            }
+        }
+        String id = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        Path written = Files.writeString(Files.createTempFile(dir, "node-id", ".tmp"), id);
+        Files.move(written, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.warn("No node id configured for {}; generated {}", dir, id);
+        return id;
+    }
+
+    /** Identifies this process among the workers leasing from a shared queue. */
+    static String processId() {
+        // The suffix keeps a restarted process that got the same pid apart from its predecessor
+        return hostName() + ":" + ProcessHandle.current().pid() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    // Exponential with jitter, so work that failed together does not all come back together
+    static long backoffSeconds(long baseSeconds, long maxSeconds, int attempts) {
+        long ceiling = Math.min(maxSeconds, baseSeconds << Math.min(Math.max(attempts - 1, 0), 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Object storage in a local directory, served by StorageController. Objects
+ * are written to a temp file and moved into place.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalObjectStorage implements ObjectStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalObjectStorage.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${storage.local.root:uploads}")
+    private String rootDir;
+
+    // Prefix of the URLs handed to clients; make it absolute when they are not served from this host
+    @Value("${storage.local.public-base-url:/api/storage}")
+    private String publicBaseUrl;
+
+    private Path root;
+
+    @PostConstruct
+    public void open() throws IOException {
+        root = Path.of(rootDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+
+        // Writes that died half way leave hidden temp files behind
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.filter(LocalObjectStorage::isTempFile).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        logger.info("Local object storage at {}", root);
+    }
+
+    @Override
+    public String publicUrl(String objectPath) {
+        return (publicBaseUrl.endsWith("/") ? publicBaseUrl : publicBaseUrl + "/") + ObjectStorage.encodePath(objectPath);
+    }
+
+    @Override
+    public void upload(String objectPath, String contentType, byte[] content, boolean upsert) throws IOException {
+        write(objectPath, upsert, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    @Override
+    public void upload(String objectPath, String contentType, Path file, boolean upsert) throws IOException {
+        write(objectPath, upsert, channel -> {
+            try (FileChannel source = FileChannel.open(file)) {
+                long size = source.size();
+                for (long position = 0; position < size; ) {
+                    position += source.transferTo(position, size - position, channel);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void upload(String objectPath, String contentType, BodySource body, long length, boolean upsert)
+            throws IOException {
+        write(objectPath, upsert, channel -> {
+            try (InputStream in = body.open(); ReadableByteChannel source = Channels.newChannel(in)) {
+                long position = 0;
+                while (position < length) {
+                    long copied = channel.transferFrom(source, position, length - position);
+                    // A stream channel blocks until it has data, so nothing copied means end of stream
+                    if (copied == 0) {
+                        throw new IOException("Body of " + objectPath + " ended after " + position + " of " + length + " bytes");
+                    }
+                    position += copied;
+                }
+            }
+        });
+    }
+
+    @Override
+    public InputStream open(String objectPath) throws IOException {
+        Path file = file(objectPath);
+        return file != null ? Files.newInputStream(file) : null;
+    }
+
+    @Override
+    public boolean exists(String objectPath) {
+        return file(objectPath) != null;
+    }
+
+    /** The file holding an object, or {@code null} if there is no such object. */
+    public Path file(String objectPath) {
+        Path file;
+        try {
+            file = resolve(objectPath);
+        } catch (IOException e) {
+            return null;
+        }
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    private void write(String objectPath, boolean upsert, ChannelWriter writer) throws IOException {
+        Path target = resolve(objectPath);
+        if (!upsert && Files.exists(target)) {
+            throw new FileAlreadyExistsException(objectPath, null, "object already exists");
+        }
+        Files.createDirectories(target.getParent());
+
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName() + ".", TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.writeTo(channel);
+                channel.force(false);
+            }
+            if (upsert) {
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                // A plain move refuses to replace an object another writer stored meanwhile
+                Files.move(temp, target);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Object paths may not climb out of the root or name hidden (temp) files
+    private Path resolve(String objectPath) throws IOException {
+        if (objectPath == null || objectPath.isBlank()) {
+            throw new IOException("Empty object path");
+        }
+        for (String segment : objectPath.split("/")) {
+            if (segment.isEmpty() || segment.startsWith(".") || segment.contains("\\")) {
+                throw new IOException("Invalid object path: " + objectPath);
+            }
+        }
+        Path file = root.resolve(objectPath).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IOException("Invalid object path: " + objectPath);
+        }
+        return file;
+    }
+
+    private static boolean isTempFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(TEMP_SUFFIX) && Files.isRegularFile(file);
+    }
+}
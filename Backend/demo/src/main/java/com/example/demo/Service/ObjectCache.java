@@ -0,0 +1,361 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Read-through disk and memory cache of storage objects for the download
+ * proxy. ETags are content hashes; handed-out files are pinned until closed.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.proxy.enabled", havingValue = "true")
+public class ObjectCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectCache.class);
+
+    /**
+     * A cached object: {@code bytes} when it is held in memory, otherwise
+     * {@code file}, which stays on disk until this is closed.
+     */
+    public record CachedObject(String etag, byte[] bytes, Path file, Runnable release) implements AutoCloseable {
+        @Override
+        public void close() {
+            release.run();
+        }
+    }
+
+    private record MemoryEntry(String etag, byte[] bytes, long fetchedAt) { }
+
+    // etag is null for files re-adopted at startup until they are first read
+    private record DiskEntry(long size, long fetchedAt, String etag) { }
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
+
+    @Value("${storage.proxy.cache-dir:${java.io.tmpdir}/object-cache}")
+    private String cacheDir;
+
+    @Value("${storage.proxy.disk-max-bytes:4294967296}")
+    private long diskMaxBytes;
+
+    @Value("${storage.proxy.memory-max-bytes:67108864}")
+    private long memoryMaxBytes;
+
+    @Value("${storage.proxy.memory-max-object-bytes:262144}")
+    private long memoryMaxObjectBytes;
+
+    @Value("${storage.proxy.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    private Path dir;
+
+    // Both access-ordered: iteration starts at the least recently used entry. Guarded by this
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    // Keys handed out and not yet released, with their count; guarded by this
+    private final Map<String, Integer> pins = new HashMap<>();
+    // Invalidated while pinned: the file goes when the last pin does, unless it was fetched again
+    private final Set<String> doomed = new HashSet<>();
+
+    private final Map<String, CompletableFuture<DiskEntry>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void open() throws IOException {
+        dir = Path.of(cacheDir).toAbsolutePath();
+        Files.createDirectories(dir);
+
+        // Re-adopt what a previous run fetched, oldest first
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> existing = files.toList();
+            for (Path file : existing) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file); // half-fetched
+                }
+            }
+            synchronized (this) {
+                existing.stream()
+                        .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                        .map(ObjectCache::attributes)
+                        .filter(entry -> entry != null)
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().fetchedAt()))
+                        .forEach(entry -> {
+                            disk.put(entry.getKey(), entry.getValue());
+                            diskBytes += entry.getValue().size();
+                        });
+                evictDisk();
+            }
+        }
+        // A new version uploaded from this node replaces the cached one right away; other nodes wait for the TTL
+        uploadOutbox.addLandedListener(landed -> invalidate(landed.objectPath()));
+        logger.info("Object cache at {} holds {} files ({} bytes)", dir, disk.size(), diskBytes);
+    }
+
+    /**
+     * Returns the object, fetching it from storage on a miss, or {@code null}
+     * if storage does not have it. The caller must close it.
+     */
+    public CachedObject get(String objectPath) throws IOException, InterruptedException {
+        String key = keyFor(objectPath);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            MemoryEntry cached = memory.get(key);
+            if (cached != null && !isExpired(cached.fetchedAt(), now)) {
+                return new CachedObject(cached.etag(), cached.bytes(), null, () -> { });
+            }
+        }
+
+        DiskEntry entry = pinFresh(key, now);
+        if (entry == null) {
+            entry = fetch(key, objectPath);
+            if (entry == null) {
+                return null;
+            }
+        }
+        Path file = dir.resolve(key);
+        boolean handedOut = false;
+        try {
+            String etag = entry.etag() != null ? entry.etag() : etagOf(key, entry, file);
+            if (entry.size() <= memoryMaxObjectBytes) {
+                byte[] bytes = Files.readAllBytes(file);
+                remember(key, new MemoryEntry(etag, bytes, entry.fetchedAt()));
+                return new CachedObject(etag, bytes, null, () -> { });
+            }
+            handedOut = true;
+            return new CachedObject(etag, null, file, () -> release(key));
+        } finally {
+            if (!handedOut) {
+                release(key);
+            }
+        }
+    }
+
+    /** Drops the cached copy of {@code objectPath}, so the next request fetches it again. */
+    public void invalidate(String objectPath) {
+        String key = keyFor(objectPath);
+        synchronized (this) {
+            MemoryEntry cached = memory.remove(key);
+            if (cached != null) {
+                memoryBytes -= cached.bytes().length;
+            }
+            DiskEntry entry = disk.remove(key);
+            if (entry != null) {
+                diskBytes -= entry.size();
+            }
+            if (pins.containsKey(key)) {
+                doomed.add(key);
+            } else {
+                delete(key);
+            }
+        }
+    }
+
+    private synchronized void release(String key) {
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        if (!pins.containsKey(key) && doomed.remove(key)) {
+            delete(key);
+        }
+        evictDisk();
+    }
+
+    // Pins the disk copy of key if it is there and fresh
+    private synchronized DiskEntry pinFresh(String key, long now) {
+        DiskEntry entry = disk.get(key);
+        if (entry == null || isExpired(entry.fetchedAt(), now)) {
+            return null;
+        }
+        if (!Files.exists(dir.resolve(key))) {
+            disk.remove(key); // removed behind our back
+            diskBytes -= entry.size();
+            return null;
+        }
+        pins.merge(key, 1, Integer::sum);
+        return entry;
+    }
+
+    // Hashes a file re-adopted at startup, once; the caller holds a pin on it
+    private String etagOf(String key, DiskEntry entry, Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String etag = etag(digest);
+        synchronized (this) {
+            disk.replace(key, entry, new DiskEntry(entry.size(), entry.fetchedAt(), etag));
+        }
+        return etag;
+    }
+
+    /** Downloads the object and returns its entry, pinned, or {@code null} if storage does not have it. */
+    private DiskEntry fetch(String key, String objectPath) throws IOException, InterruptedException {
+        CompletableFuture<DiskEntry> mine = new CompletableFuture<>();
+        CompletableFuture<DiskEntry> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            DiskEntry shared;
+            try {
+                shared = existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+            if (shared == null) {
+                return null;
+            }
+            DiskEntry pinned = pinFresh(key, System.currentTimeMillis());
+            return pinned != null ? pinned : download(key, objectPath);
+        }
+        try {
+            DiskEntry entry = download(key, objectPath);
+            mine.complete(entry);
+            return entry;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private DiskEntry download(String key, String objectPath) throws IOException, InterruptedException {
+        Path temp = Files.createTempFile(dir, key + ".", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = objectStorage.open(objectPath)) {
+                if (in == null) {
+                    return null;
+                }
+                Files.copy(new DigestInputStream(in, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Path file = dir.resolve(key);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            long size = Files.size(file);
+            DiskEntry entry = new DiskEntry(size, System.currentTimeMillis(), etag(digest));
+            synchronized (this) {
+                MemoryEntry stale = memory.remove(key);
+                if (stale != null) {
+                    memoryBytes -= stale.bytes().length;
+                }
+                DiskEntry previous = disk.put(key, entry);
+                diskBytes += size - (previous != null ? previous.size() : 0);
+                doomed.remove(key); // the new file is current
+                pins.merge(key, 1, Integer::sum);
+                evictDisk();
+            }
+            logger.debug("Cached {} ({} bytes)", objectPath, size);
+            return entry;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private synchronized void remember(String key, MemoryEntry entry) {
+        MemoryEntry previous = memory.put(key, entry);
+        memoryBytes += entry.bytes().length - (previous != null ? previous.bytes().length : 0);
+        Iterator<MemoryEntry> eldest = memory.values().iterator();
+        while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().bytes().length;
+            eldest.remove();
+        }
+    }
+
+    // Callers hold the monitor. Pinned files are skipped, so the cache may run
+    // over its budget until they are released.
+    private void evictDisk() {
+        Iterator<Map.Entry<String, DiskEntry>> eldest = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, DiskEntry> entry = eldest.next();
+            if (pins.containsKey(entry.getKey())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(dir.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not evict cached object {}: {}", entry.getKey(), e.getMessage());
+                continue;
+            }
+            diskBytes -= entry.getValue().size();
+            eldest.remove();
+        }
+    }
+
+    // Callers hold the monitor
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(dir.resolve(key));
+        } catch (IOException e) {
+            logger.warn("Could not drop cached object {}: {}", key, e.getMessage());
+        }
+    }
+
+    private boolean isExpired(long fetchedAt, long now) {
+        return ttlSeconds > 0 && now - fetchedAt > ttlSeconds * 1000;
+    }
+
+    // Object paths can be long and contain characters file systems dislike
+    private static String keyFor(String objectPath) {
+        return HexFormat.of().formatHex(sha256().digest(objectPath.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String etag(MessageDigest digest) {
+        return "\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map.Entry<String, DiskEntry> attributes(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return Map.entry(file.getFileName().toString(),
+                    new DiskEntry(attributes.size(), attributes.lastModifiedTime().toMillis(), null));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Where uploads and certificates are kept; {@code storage.backend} picks
+ * {@code supabase} or {@code local}. Uploading over an existing object needs upsert.
+ */
+public interface ObjectStorage {
+
+    /** Reopenable upload body, e.g. a multipart part spooled to disk by Tomcat. */
+    @FunctionalInterface
+    interface BodySource {
+        InputStream open() throws IOException;
+    }
+
+    /** URL clients can fetch the object from without credentials. */
+    String publicUrl(String objectPath);
+
+    /** Percent-encodes each segment of an object path for use in a URL. */
+    static String encodePath(String objectPath) {
+        return Arrays.stream(objectPath.split("/", -1))
+                .map(segment -> UriUtils.encodePathSegment(segment, StandardCharsets.UTF_8))
+                .collect(Collectors.joining("/"));
+    }
+
+    void upload(String objectPath, String contentType, byte[] content, boolean upsert)
+            throws IOException, InterruptedException;
+
+    void upload(String objectPath, String contentType, Path file, boolean upsert)
+            throws IOException, InterruptedException;
+
+    /**
+     * Stores {@code length} bytes read from {@code body} without holding them
+     * in memory. The body may be reopened if the write has to be repeated.
+     */
+    void upload(String objectPath, String contentType, BodySource body, long length, boolean upsert)
+            throws IOException, InterruptedException;
+
+    /** Whether an object exists, without fetching its content. */
+    boolean exists(String objectPath) throws IOException, InterruptedException;
+
+    /**
+     * Opens an object for reading, or returns {@code null} if it does not
+     * exist or cannot be fetched. The caller must close the stream.
+     */
+    InputStream open(String objectPath) throws IOException, InterruptedException;
+}
@@ -0,0 +1,48 @@
+package com.example.demo.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import com.itextpdf.kernel.exceptions.PdfException;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+
+/**
+ * Rewrites a finished PDF with compressed object streams and merged
+ * duplicates, a second pass with the iText kernel.
+ */
+@Service
+public class PdfCompactor {
+
+    public void compact(byte[] pdf, OutputStream out) throws IOException {
+        compact(new PdfReader(new ByteArrayInputStream(pdf)), out);
+    }
+
+    /** Compacts a PDF on disk; iText reads it through random access instead of loading it onto the heap. */
+    public void compact(Path pdf, OutputStream out) throws IOException {
+        compact(new PdfReader(pdf.toFile()), out);
+    }
+
+    private void compact(PdfReader reader, OutputStream out) throws IOException {
+        WriterProperties properties = new WriterProperties()
+                .setFullCompressionMode(true)
+                .setCompressionLevel(CompressionConstants.BEST_COMPRESSION);
+        PdfWriter writer = new PdfWriter(StreamUtils.nonClosing(out), properties);
+        writer.setSmartMode(true);
+
+        try (PdfDocument document = new PdfDocument(reader, writer)) {
+            // Reading and closing is the whole job; every object is written out again compressed
+            document.getNumberOfPages();
+        } catch (PdfException e) {
+            throw new IOException("Could not compact PDF: " + e.getMessage(), e);
+        }
+    }
+}
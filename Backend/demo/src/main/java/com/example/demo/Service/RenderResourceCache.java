@@ -0,0 +1,254 @@
+package com.example.demo.Service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import jakarta.annotation.PostConstruct;
+
+import org.apache.fontbox.ttf.OTFParser;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+
+/**
+ * Process-wide cache for everything a certificate render pulls in besides the
+ * template itself: remote images/CSS, font files and parsed font metrics.
+ * After the first render of a template no further network I/O happens.
+ */
+@Service
+public class RenderResourceCache implements FSStreamFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderResourceCache.class);
+
+    private record Entry(byte[] bytes, long fetchedAt) {
+        boolean isMissing() { return bytes == null; }
+    }
+
+    private record FontFile(String family, byte[] bytes) { }
+
+    private final Map<String, Entry> resources = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final List<FontFile> fonts = new ArrayList<>();
+    private final FSDefaultCacheStore fontMetrics = new FSDefaultCacheStore();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    @Value("${certificate.render.resource-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // Failed fetches are remembered for this long so a dead host costs one timeout, not one per certificate
+    @Value("${certificate.render.resource-cache.failure-ttl-seconds:300}")
+    private long failureTtlSeconds;
+
+    @Value("${certificate.render.fonts-dir:}")
+    private String fontsDir;
+
+    // Compact output profile: raster images are scaled down to this many pixels on the longest side before embedding
+    @Value("${certificate.output.profile:standard}")
+    private String outputProfile;
+
+    @Value("${certificate.output.max-image-px:1200}")
+    private int maxImagePx;
+
+    @PostConstruct
+    public void loadFonts() {
+        if (fontsDir == null || fontsDir.isBlank()) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(Path.of(fontsDir))) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString().toLowerCase();
+                if (!name.endsWith(".ttf") && !name.endsWith(".otf")) {
+                    continue;
+                }
+                byte[] bytes = Files.readAllBytes(file);
+                TTFParser parser = name.endsWith(".otf") ? new OTFParser() : new TTFParser();
+                try (TrueTypeFont ttf = parser.parse(new ByteArrayInputStream(bytes))) {
+                    String family = ttf.getNaming() != null ? ttf.getNaming().getFontFamily() : null;
+                    fonts.add(new FontFile(family != null ? family : ttf.getName(), bytes));
+                }
+            }
+            logger.info("Registered {} certificate fonts from {}", fonts.size(), fontsDir);
+        } catch (IOException e) {
+            logger.warn("Could not load certificate fonts from {}: {}", fontsDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Points a renderer at the shared caches. Call before {@code run()}.
+     */
+    public PdfRendererBuilder configure(PdfRendererBuilder builder) {
+        builder.useHttpStreamImplementation(this);
+        builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetrics);
+        for (FontFile font : fonts) {
+            // Subset, so only the glyphs a certificate actually uses are embedded
+            builder.useFont(() -> new ByteArrayInputStream(font.bytes()), font.family(), 400,
+                    BaseRendererBuilder.FontStyle.NORMAL, true);
+        }
+        return builder;
+    }
+
+    @Override
+    public FSStream getUrl(String url) {
+        Entry entry = resources.get(url);
+        if (entry == null || (entry.isMissing() && isExpired(entry))) {
+            entry = fetchOnce(url);
+        }
+        // A stream without content reads as a missing resource; returning null would crash the renderer
+        return new CachedStream(entry.bytes());
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt() > failureTtlSeconds * 1000;
+    }
+
+    // Concurrent renders that miss on the same URL share one download
+    private Entry fetchOnce(String url) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(url, mine);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            Entry entry = fetch(url);
+            mine.complete(entry);
+            return entry;
+        } finally {
+            inFlight.remove(url);
+        }
+    }
+
+    private Entry fetch(String url) {
+        Entry entry;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(10))
+                    .GET()
+                    .build();
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() / 100 == 2) {
+                byte[] body = response.body();
+                if ("compact".equalsIgnoreCase(outputProfile)) {
+                    body = shrinkImage(url, response.headers().firstValue("Content-Type").orElse(""), body);
+                }
+                entry = new Entry(body, System.currentTimeMillis());
+            } else {
+                logger.warn("Render resource {} returned status {}", url, response.statusCode());
+                entry = new Entry(null, System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Entry(null, System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.warn("Render resource {} could not be fetched: {}", url, e.getMessage());
+            entry = new Entry(null, System.currentTimeMillis());
+        }
+
+        long size = entry.isMissing() ? 0 : entry.bytes().length;
+        if (cachedBytes.get() + size <= maxBytes) {
+            Entry previous = resources.put(url, entry);
+            cachedBytes.addAndGet(size - (previous == null || previous.isMissing() ? 0 : previous.bytes().length));
+        }
+        return entry;
+    }
+
+    /** Applies the output profile's image scaling to an image that did not come over HTTP, e.g. a template asset. */
+    public byte[] optimizeImage(String name, String contentType, byte[] bytes) {
+        return "compact".equalsIgnoreCase(outputProfile) ? shrinkImage(name, contentType, bytes) : bytes;
+    }
+
+    /**
+     * Scales a PNG or JPEG down to {@code maxImagePx} on its longest side.
+     * Anything else, or an image that would not get smaller, is kept as is.
+     */
+    private byte[] shrinkImage(String url, String contentType, byte[] bytes) {
+        String type = contentType.toLowerCase();
+        String format = type.contains("png") ? "png" : type.contains("jpeg") || type.contains("jpg") ? "jpg" : null;
+        if (format == null || maxImagePx <= 0) {
+            return bytes;
+        }
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null || Math.max(image.getWidth(), image.getHeight()) <= maxImagePx) {
+                return bytes;
+            }
+            double scale = (double) maxImagePx / Math.max(image.getWidth(), image.getHeight());
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+            boolean alpha = "png".equals(format) && image.getColorModel().hasAlpha();
+
+            BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.drawImage(image, 0, 0, width, height, null);
+            graphics.dispose();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(scaled, format, out);
+            if (out.size() >= bytes.length) {
+                return bytes;
+            }
+            logger.info("Scaled render image {} from {}x{} to {}x{} ({} -> {} bytes)", url,
+                    image.getWidth(), image.getHeight(), width, height, bytes.length, out.size());
+            return out.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not scale render image {}: {}", url, e.getMessage());
+            return bytes;
+        }
+    }
+
+    private static class CachedStream implements FSStream {
+        private final byte[] bytes;
+
+        CachedStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public Reader getReader() {
+            return bytes == null ? null : new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+        }
+    }
+}
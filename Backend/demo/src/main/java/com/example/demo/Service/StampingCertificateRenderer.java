@@ -0,0 +1,395 @@
+package com.example.demo.Service;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingColor;
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingColorN;
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingColorSpace;
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceCMYKColor;
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceGrayColor;
+import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceRGBColor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.openhtmltopdf.extend.FSDOMMutator;
+
+/**
+ * Faster certificate engine: a background PDF laid out once per template,
+ * with per-student text stamped on by PDFBox. Text outside WinAnsi falls
+ * back to the HTML engine.
+ */
+@Service
+public class StampingCertificateRenderer {
+
+    public static final List<String> VARIABLES = List.of("name", "email", "phone", "percentage", "subject", "date");
+
+    // Two marker widths let us tell left, centred and right aligned lines apart
+    private static final String SHORT_PAD = "";
+    private static final String LONG_PAD = "WWWWWWWW";
+    private static final Pattern MARKER = Pattern.compile(
+            "Q(" + String.join("|", VARIABLES) + ")W*Q", Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, PDType1Font> STANDARD_FONTS = new HashMap<>();
+
+    static {
+        for (PDType1Font font : List.of(
+                PDType1Font.TIMES_ROMAN, PDType1Font.TIMES_BOLD, PDType1Font.TIMES_ITALIC, PDType1Font.TIMES_BOLD_ITALIC,
+                PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD, PDType1Font.HELVETICA_OBLIQUE,
+                PDType1Font.HELVETICA_BOLD_OBLIQUE, PDType1Font.COURIER, PDType1Font.COURIER_BOLD,
+                PDType1Font.COURIER_OBLIQUE, PDType1Font.COURIER_BOLD_OBLIQUE, PDType1Font.SYMBOL,
+                PDType1Font.ZAPF_DINGBATS)) {
+            STANDARD_FONTS.put(font.getBaseFont(), font);
+        }
+    }
+
+    /** Renders the template through the HTML engine with the given values. */
+    @FunctionalInterface
+    public interface LayoutRenderer {
+        void render(Map<String, String> values, FSDOMMutator mutator, OutputStream out) throws IOException;
+    }
+
+    private enum Align { LEFT, CENTER, RIGHT }
+
+    private record Run(String text, String fontName, float fontSize, int rgb) { }
+
+    private record Line(int page, float baseline, float minX, float maxX, List<Run> runs) {
+        String key() {
+            StringBuilder text = new StringBuilder();
+            runs.forEach(run -> text.append(run.text()));
+            return page + "|" + Math.round(baseline) + "|" + text;
+        }
+    }
+
+    private record StampLine(int page, float baseline, float anchorX, Align align, List<Run> runs) { }
+
+    private record Layout(byte[] background, List<StampLine> lines) { }
+
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+
+    public void render(String template, Map<String, String> values, LayoutRenderer html, OutputStream out) throws IOException {
+        Layout layout = layout(template, html);
+
+        try (PDDocument document = PDDocument.load(layout.background())) {
+            Map<Integer, PDPageContentStream> streams = new HashMap<>();
+            try {
+                for (StampLine line : layout.lines()) {
+                    PDPageContentStream stream = streams.get(line.page());
+                    if (stream == null) {
+                        PDPage page = document.getPage(line.page());
+                        stream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, true, true);
+                        streams.put(line.page(), stream);
+                    }
+                    stamp(stream, line, values);
+                }
+            } finally {
+                for (PDPageContentStream stream : streams.values()) {
+                    stream.close();
+                }
+            }
+            document.save(out);
+        }
+    }
+
+    /**
+     * Builds (or returns the cached) stamping layout for a template. Throws
+     * if the template cannot be stamped reliably.
+     */
+    public void prepare(String template, LayoutRenderer html) throws IOException {
+        layout(template, html);
+    }
+
+    public void evict(String template) {
+        layouts.remove(template);
+    }
+
+    private Layout layout(String template, LayoutRenderer html) throws IOException {
+        Layout layout = layouts.get(template);
+        if (layout == null) {
+            layout = buildLayout(html);
+            layouts.put(template, layout);
+        }
+        return layout;
+    }
+
+    private Layout buildLayout(LayoutRenderer html) throws IOException {
+        Map<String, String> shortMarkers = markers(SHORT_PAD);
+        List<Line> shortLines = readLines(render(html, shortMarkers, null));
+        List<Line> longLines = readLines(render(html, markers(LONG_PAD), null));
+        byte[] background = render(html, shortMarkers, StampingCertificateRenderer::hideMarkedBlocks);
+        List<Line> backgroundLines = readLines(background);
+
+        if (shortLines.size() != longLines.size()) {
+            throw new IllegalStateException("Template text reflows with the length of its values");
+        }
+        Set<String> staticLines = new HashSet<>();
+        for (Line line : backgroundLines) {
+            if (MARKER.matcher(line.key()).find()) {
+                throw new IllegalStateException("A template value is outside any hideable block");
+            }
+            staticLines.add(line.key());
+        }
+
+        List<StampLine> stamps = new ArrayList<>();
+        for (int i = 0; i < shortLines.size(); i++) {
+            Line line = shortLines.get(i);
+            if (staticLines.contains(line.key())) {
+                continue;
+            }
+            Line longer = longLines.get(i);
+            if (Math.abs(line.minX() - longer.minX()) < 1f) {
+                stamps.add(new StampLine(line.page(), line.baseline(), line.minX(), Align.LEFT, line.runs()));
+            } else if (Math.abs(line.maxX() - longer.maxX()) < 1f) {
+                stamps.add(new StampLine(line.page(), line.baseline(), line.maxX(), Align.RIGHT, line.runs()));
+            } else {
+                float center = (line.minX() + line.maxX()) / 2;
+                stamps.add(new StampLine(line.page(), line.baseline(), center, Align.CENTER, line.runs()));
+            }
+        }
+        return new Layout(background, stamps);
+    }
+
+    private static Map<String, String> markers(String pad) {
+        Map<String, String> markers = new HashMap<>();
+        for (String variable : VARIABLES) {
+            markers.put(variable, "Q" + variable + pad + "Q");
+        }
+        return markers;
+    }
+
+    private static byte[] render(LayoutRenderer html, Map<String, String> values, FSDOMMutator mutator) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        html.render(values, mutator, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Hides (without removing from layout) every block that contains a
+     * marker, so the background keeps the exact geometry of a full render.
+     */
+    private static void hideMarkedBlocks(org.w3c.dom.Document document) {
+        NodeList all = document.getElementsByTagName("*");
+        List<Element> blocks = new ArrayList<>();
+        for (int i = 0; i < all.getLength(); i++) {
+            Element element = (Element) all.item(i);
+            if (hasMarkerText(element)) {
+                Element block = element;
+                while (isInline(block) && block.getParentNode() instanceof Element parent) {
+                    block = parent;
+                }
+                blocks.add(block);
+            }
+        }
+        for (Element block : blocks) {
+            String style = block.getAttribute("style");
+            block.setAttribute("style", (style.isBlank() ? "" : style + ";") + "visibility: hidden");
+        }
+    }
+
+    private static boolean hasMarkerText(Element element) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE && MARKER.matcher(child.getNodeValue()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInline(Element element) {
+        return switch (element.getTagName().toLowerCase()) {
+            case "span", "strong", "b", "em", "i", "u", "small", "a", "sup", "sub", "font", "mark" -> true;
+            default -> false;
+        };
+    }
+
+    private static List<Line> readLines(byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            LineCollector collector = new LineCollector();
+            collector.getText(document);
+            return collector.finish();
+        }
+    }
+
+    private static void stamp(PDPageContentStream stream, StampLine line, Map<String, String> values) throws IOException {
+        List<Run> runs = new ArrayList<>(line.runs().size());
+        float width = 0;
+        for (Run run : line.runs()) {
+            String text = substitute(run.text(), values);
+            PDType1Font font = font(run.fontName());
+            try {
+                width += font.getStringWidth(text) / 1000f * run.fontSize();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Text cannot be stamped with " + font.getBaseFont() + ": " + e.getMessage(), e);
+            }
+            runs.add(new Run(text, run.fontName(), run.fontSize(), run.rgb()));
+        }
+
+        float x = switch (line.align()) {
+            case LEFT -> line.anchorX();
+            case RIGHT -> line.anchorX() - width;
+            case CENTER -> line.anchorX() - width / 2;
+        };
+
+        stream.beginText();
+        stream.newLineAtOffset(x, line.baseline());
+        for (Run run : runs) {
+            stream.setFont(font(run.fontName()), run.fontSize());
+            stream.setNonStrokingColor(new Color(run.rgb()));
+            stream.showText(run.text());
+        }
+        stream.endText();
+    }
+
+    private static String substitute(String text, Map<String, String> values) {
+        Matcher matcher = MARKER.matcher(text);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String marker = matcher.group();
+            String value = values.getOrDefault(matcher.group(1).toLowerCase(), "");
+            value = value == null ? "" : value;
+            // Follow any CSS text-transform that was applied to the marker
+            if (marker.equals(marker.toUpperCase())) {
+                value = value.toUpperCase();
+            } else if (marker.equals(marker.toLowerCase())) {
+                value = value.toLowerCase();
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static PDType1Font font(String name) {
+        PDType1Font font = STANDARD_FONTS.get(name);
+        if (font != null) {
+            return font;
+        }
+        // Embedded (subset) fonts cannot draw new text; use the closest standard face
+        String lower = name.toLowerCase();
+        boolean bold = lower.contains("bold");
+        boolean italic = lower.contains("italic") || lower.contains("oblique");
+        boolean serif = lower.contains("times") || lower.contains("serif") && !lower.contains("sans");
+        if (serif) {
+            return bold ? (italic ? PDType1Font.TIMES_BOLD_ITALIC : PDType1Font.TIMES_BOLD)
+                    : (italic ? PDType1Font.TIMES_ITALIC : PDType1Font.TIMES_ROMAN);
+        }
+        return bold ? (italic ? PDType1Font.HELVETICA_BOLD_OBLIQUE : PDType1Font.HELVETICA_BOLD)
+                : (italic ? PDType1Font.HELVETICA_OBLIQUE : PDType1Font.HELVETICA);
+    }
+
+    /** Groups glyphs into lines and same-style runs, with the fill colour of each glyph. */
+    private static class LineCollector extends PDFTextStripper {
+
+        private record Glyph(int page, float y, float x, float width, String text, String font, float size, int rgb) { }
+
+        private final List<Glyph> glyphs = new ArrayList<>();
+        private int page = -1;
+        private float pageHeight;
+
+        LineCollector() throws IOException {
+            addOperator(new SetNonStrokingColorSpace());
+            addOperator(new SetNonStrokingColor());
+            addOperator(new SetNonStrokingColorN());
+            addOperator(new SetNonStrokingDeviceGrayColor());
+            addOperator(new SetNonStrokingDeviceRGBColor());
+            addOperator(new SetNonStrokingDeviceCMYKColor());
+        }
+
+        @Override
+        protected void startPage(PDPage pdPage) throws IOException {
+            page++;
+            pageHeight = pdPage.getMediaBox().getHeight();
+        }
+
+        @Override
+        protected void processTextPosition(TextPosition text) {
+            int rgb;
+            try {
+                rgb = getGraphicsState().getNonStrokingColor().toRGB();
+            } catch (IOException | RuntimeException e) {
+                rgb = 0;
+            }
+            String font = text.getFont() != null ? text.getFont().getName() : "Helvetica";
+            glyphs.add(new Glyph(page, pageHeight - text.getYDirAdj(), text.getXDirAdj(), text.getWidthDirAdj(),
+                    text.getUnicode(), font, text.getFontSizeInPt(), rgb));
+        }
+
+        List<Line> finish() {
+            // Top to bottom, then left to right; glyphs within half a font size share a baseline
+            List<Glyph> sorted = new ArrayList<>(glyphs);
+            sorted.sort((a, b) -> a.page() != b.page() ? Integer.compare(a.page(), b.page()) : Float.compare(b.y(), a.y()));
+            List<List<Glyph>> grouped = new ArrayList<>();
+            List<Glyph> current = null;
+            for (Glyph glyph : sorted) {
+                Glyph first = current == null ? null : current.get(0);
+                if (first == null || first.page() != glyph.page() || first.y() - glyph.y() > glyph.size() / 2) {
+                    current = new ArrayList<>();
+                    grouped.add(current);
+                }
+                current.add(glyph);
+            }
+
+            List<Line> lines = new ArrayList<>(grouped.size());
+            for (List<Glyph> lineGlyphs : grouped) {
+                lineGlyphs.sort((a, b) -> Float.compare(a.x(), b.x()));
+                lines.add(toLine(lineGlyphs));
+            }
+            return lines;
+        }
+
+        private static Line toLine(List<Glyph> lineGlyphs) {
+            List<Run> runs = new ArrayList<>();
+            Glyph first = lineGlyphs.get(0);
+            float minX = first.x();
+            float maxX = first.x();
+            StringBuilder text = new StringBuilder();
+            Glyph style = first;
+            for (Glyph glyph : lineGlyphs) {
+                if (!glyph.font().equals(style.font()) || glyph.size() != style.size() || glyph.rgb() != style.rgb()) {
+                    runs.add(new Run(text.toString(), style.font(), style.size(), style.rgb()));
+                    text.setLength(0);
+                    style = glyph;
+                }
+                // Word gaps are not always drawn as space glyphs
+                boolean gap = glyph.x() - maxX > glyph.size() * 0.2f;
+                if (gap && !glyph.text().isBlank() && !endsWithSpace(runs, text)) {
+                    text.append(' ');
+                }
+                text.append(glyph.text());
+                maxX = Math.max(maxX, glyph.x() + glyph.width());
+            }
+            runs.add(new Run(text.toString(), style.font(), style.size(), style.rgb()));
+            return new Line(first.page(), first.y(), minX, maxX, runs);
+        }
+
+        private static boolean endsWithSpace(List<Run> runs, StringBuilder text) {
+            if (text.length() > 0) {
+                return Character.isWhitespace(text.charAt(text.length() - 1));
+            }
+            if (runs.isEmpty()) {
+                return true;
+            }
+            String previous = runs.get(runs.size() - 1).text();
+            return previous.isEmpty() || Character.isWhitespace(previous.charAt(previous.length() - 1));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.demo.Repository.StoredObjectRepository;
+
+/**
+ * Content-addressed uploads: named by SHA-256, so identical bytes are stored
+ * once. New objects go out through the UploadOutbox.
+ */
+@Service
+public class StoredObjectService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoredObjectService.class);
+
+    // Two nodes storing the same new bytes at once write the same object; the first row wins
+    private static final String RECORD_OBJECT =
+            "INSERT INTO stored_objects (sha256, object_path, content_type, size, created_at) VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (sha256) DO NOTHING";
+
+    /** Where an upload ended up; {@code existing} is true when no bytes were sent. */
+    public record Stored(String objectPath, String url, boolean existing) { }
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Autowired
+    private StoredObjectRepository storedObjectRepository;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${storage.dedup.enabled:true}")
+    private boolean enabled;
+
+    public Stored upload(MultipartFile file, String folder) throws IOException, InterruptedException {
+        String contentType = file.getContentType() != null ? file.getContentType() : "application/octet-stream";
+        return upload(folder, file.getOriginalFilename(), contentType, file::getInputStream, file.getSize());
+    }
+
+    /**
+     * Stores {@code body} under {@code folder} unless identical content is
+     * already stored. Call it inside the transaction that saves the URL.
+     */
+    public Stored upload(String folder, String fileName, String contentType, ObjectStorage.BodySource body, long size)
+            throws IOException, InterruptedException {
+        String sha256 = sha256(body);
+        Stored existing = existing(fileName, sha256);
+        if (existing != null) {
+            return existing;
+        }
+
+        String objectPath = objectPath(folder, sha256, fileName);
+        String url = uploadOutbox.enqueue(objectPath, contentType, body, size, sha256);
+        if (url != null) {
+            return new Stored(objectPath, url, false); // recorded once it lands
+        }
+        // Same path for the same bytes, so overwriting is harmless
+        objectStorage.upload(objectPath, contentType, body, size, true);
+        record(sha256, objectPath, contentType, size);
+        return new Stored(objectPath, objectStorage.publicUrl(objectPath), false);
+    }
+
+    /**
+     * Same as {@link #upload(String, String, String, ObjectStorage.BodySource, long)}
+     * for a file whose SHA-256 is known. The file is moved into the spool; do not use it afterwards.
+     */
+    public Stored upload(String folder, String fileName, String contentType, Path file, String sha256)
+            throws IOException, InterruptedException {
+        Stored existing = existing(fileName, sha256);
+        if (existing != null) {
+            return existing;
+        }
+
+        String objectPath = objectPath(folder, sha256, fileName);
+        String url = uploadOutbox.enqueue(objectPath, contentType, file, sha256);
+        if (url != null) {
+            return new Stored(objectPath, url, false);
+        }
+        long size = Files.size(file);
+        objectStorage.upload(objectPath, contentType, file, true);
+        record(sha256, objectPath, contentType, size);
+        return new Stored(objectPath, objectStorage.publicUrl(objectPath), false);
+    }
+
+    // The stored or pending object with these bytes, or null
+    private Stored existing(String fileName, String sha256) {
+        if (!enabled) {
+            return null;
+        }
+        var existing = storedObjectRepository.findById(sha256);
+        if (existing.isPresent()) {
+            String path = existing.get().getObjectPath();
+            logger.debug("Upload of {} matches stored object {}", fileName, path);
+            return new Stored(path, objectStorage.publicUrl(path), true);
+        }
+        // Same bytes still waiting in the outbox: share that upload
+        String pendingPath = uploadOutbox.pendingPathFor(sha256);
+        if (pendingPath != null) {
+            return new Stored(pendingPath, objectStorage.publicUrl(pendingPath), true);
+        }
+        return null;
+    }
+
+    @PostConstruct
+    public void recordLandedUploads() {
+        uploadOutbox.addLandedListener(landed -> {
+            if (landed.sha256() != null) {
+                record(landed.sha256(), landed.objectPath(), landed.contentType(), landed.size());
+            }
+        });
+    }
+
+    private void record(String sha256, String objectPath, String contentType, long size) {
+        if (enabled) {
+            jdbcTemplate.update(RECORD_OBJECT, sha256, objectPath, contentType, size, LocalDateTime.now());
+        }
+    }
+
+    private static String objectPath(String folder, String sha256, String fileName) {
+        String name = fileName == null || fileName.isBlank()
+                ? sha256
+                : sha256 + "-" + fileName.trim().replaceAll("[^a-zA-Z0-9._-]", "_");
+        return folder == null || folder.isEmpty() ? name : folder + "/" + name;
+    }
+
+    private static String sha256(ObjectStorage.BodySource body) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(body.open(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
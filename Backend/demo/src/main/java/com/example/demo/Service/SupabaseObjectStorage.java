@@ -0,0 +1,344 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Object storage in a Supabase bucket over one keep-alive client, with
+ * retries and a circuit breaker.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "supabase", matchIfMissing = true)
+public class SupabaseObjectStorage implements ObjectStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(SupabaseObjectStorage.class);
+
+    // The renderer writes into this much buffer while the HTTP client drains it
+    /** Thrown without calling storage while the circuit breaker is open. */
+    public static class StorageUnavailableException extends IOException {
+        public StorageUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final String storageUrl;
+    private final String apiKey;
+    private final String bucket;
+    private final HttpClient httpClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Prefix of the URLs handed to clients, e.g. /api/objects to serve them through the download proxy;
+    // empty for the bucket's own public URLs
+    @Value("${storage.public-base-url:}")
+    private String publicBaseUrl;
+
+    @Value("${storage.request-timeout-ms:30000}")
+    private long requestTimeoutMs;
+
+    // Uploads wait for the whole body to go out before the response, so they get longer
+    @Value("${storage.upload-timeout-ms:300000}")
+    private long uploadTimeoutMs;
+
+    @Value("${storage.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${storage.retry.base-delay-ms:200}")
+    private long retryBaseDelayMs;
+
+    @Value("${storage.retry.max-delay-ms:2000}")
+    private long retryMaxDelayMs;
+
+    @Value("${storage.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${storage.circuit.open-ms:30000}")
+    private long openMs;
+
+    // Circuit breaker state, guarded by this
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    @Autowired
+    public SupabaseObjectStorage(
+            @Value("${supabase.url}") String supabaseUrl,
+            @Value("${supabase.key}") String apiKey,
+            @Value("${supabase.bucket}") String bucket,
+            @Value("${storage.connect-timeout-ms:5000}") long connectTimeoutMs) {
+        this.storageUrl = (supabaseUrl.endsWith("/") ? supabaseUrl.substring(0, supabaseUrl.length() - 1) : supabaseUrl)
+                + "/storage/v1/object";
+        this.apiKey = apiKey;
+        this.bucket = bucket;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /** For tests: every setting Spring would inject, without reflection. */
+    SupabaseObjectStorage(String supabaseUrl, String apiKey, String bucket, long connectTimeoutMs,
+                          ObjectMapper objectMapper, String publicBaseUrl, long requestTimeoutMs, long uploadTimeoutMs,
+                          int maxAttempts, long retryBaseDelayMs, long retryMaxDelayMs,
+                          int failureThreshold, long openMs) {
+        this(supabaseUrl, apiKey, bucket, connectTimeoutMs);
+        this.objectMapper = objectMapper;
+        this.publicBaseUrl = publicBaseUrl;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.uploadTimeoutMs = uploadTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelayMs = retryBaseDelayMs;
+        this.retryMaxDelayMs = retryMaxDelayMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+    }
+
+    @Override
+    public String publicUrl(String objectPath) {
+        if (publicBaseUrl == null || publicBaseUrl.isBlank()) {
+            return bucketUrl(objectPath);
+        }
+        return (publicBaseUrl.endsWith("/") ? publicBaseUrl : publicBaseUrl + "/") + ObjectStorage.encodePath(objectPath);
+    }
+
+    private String bucketUrl(String objectPath) {
+        return storageUrl + "/public/" + bucket + "/" + ObjectStorage.encodePath(objectPath);
+    }
+
+    /** Uploads a byte array, retrying on transient failures. */
+    @Override
+    public void upload(String objectPath, String contentType, byte[] content, boolean upsert)
+            throws IOException, InterruptedException {
+        send(uploadRequest(objectPath, contentType, upsert).POST(HttpRequest.BodyPublishers.ofByteArray(content)).build());
+    }
+
+    /** Uploads a local file with a known Content-Length, retrying on transient failures. */
+    @Override
+    public void upload(String objectPath, String contentType, Path file, boolean upsert)
+            throws IOException, InterruptedException {
+        send(uploadRequest(objectPath, contentType, upsert).POST(HttpRequest.BodyPublishers.ofFile(file)).build());
+    }
+
+    /**
+     * Streams {@code length} bytes from {@code body} into the request, so heap
+     * use does not grow with the file. The body is reopened if the upload is
+     * retried.
+     */
+    @Override
+    public void upload(String objectPath, String contentType, BodySource body, long length, boolean upsert)
+            throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return body.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // A known length goes out as Content-Length instead of a chunked body
+        send(uploadRequest(objectPath, contentType, upsert)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(stream, length))
+                .build());
+    }
+
+    @Override
+    public InputStream open(String objectPath) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(bucketUrl(objectPath)))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = execute(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 200) {
+            return response.body();
+        }
+        // Missing, or still failing after the retries; callers fall back to rendering either way
+        response.body().close();
+        return null;
+    }
+
+    @Override
+    public boolean exists(String objectPath) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(bucketUrl(objectPath)))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        int status = execute(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status / 100 == 2) {
+            return true;
+        }
+        // Storage answers 400 rather than 404 for some missing objects
+        if (status == 404 || status == 400) {
+            return false;
+        }
+        throw new IOException("Storage answered " + status + " to HEAD " + request.uri().getPath());
+    }
+
+    // Callers POST: that creates the object and replaces it only with x-upsert, whereas a PUT always replaces
+    private HttpRequest.Builder uploadRequest(String objectPath, String contentType, boolean upsert) {
+        String url = storageUrl + "/" + bucket + "/" + ObjectStorage.encodePath(objectPath);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(uploadTimeoutMs))
+                .header("apikey", apiKey)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", contentType != null ? contentType : "application/octet-stream");
+        if (upsert) {
+            builder.header("x-upsert", "true");
+        }
+        return builder;
+    }
+
+    private void send(HttpRequest request) throws IOException, InterruptedException {
+        Attempted<String> attempted = attempt(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = attempted.response();
+        // An earlier attempt may have stored the object before its answer was lost; the duplicate is ours
+        if (attempted.attempts() > 1 && isDuplicate(response)) {
+            logger.info("Retried upload of {} found it already stored", request.uri().getPath());
+            return;
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw failure("Upload of " + request.uri().getPath(), response);
+        }
+    }
+
+    // Storage answers 400 with statusCode "409" in the body; newer versions use a plain 409
+    private static boolean isDuplicate(HttpResponse<String> response) {
+        return response.statusCode() == 409
+                || (response.statusCode() == 400 && response.body() != null && response.body().contains("\"409\""));
+    }
+
+    private record Attempted<T>(HttpResponse<T> response, int attempts) { }
+
+    /**
+     * Sends a replayable request through the circuit breaker, retrying
+     * connection failures, timeouts, 429 and 5xx answers.
+     */
+    private <T> HttpResponse<T> execute(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        return attempt(request, handler).response();
+    }
+
+    // Same as execute, also telling how many attempts the final answer took
+    private <T> Attempted<T> attempt(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            acquire();
+            boolean reported = false;
+            try {
+                HttpResponse<T> response = httpClient.send(request, handler);
+                reported = true;
+                if (!isRetryable(response.statusCode())) {
+                    recordSuccess();
+                    return new Attempted<>(response, attempt);
+                }
+                recordFailure();
+                if (attempt >= maxAttempts) {
+                    return new Attempted<>(response, attempt);
+                }
+                if (response.body() instanceof InputStream body) {
+                    body.close();
+                }
+                logger.warn("Storage answered {} to {} {}, retrying", response.statusCode(), request.method(), request.uri());
+            } catch (IOException e) {
+                reported = true;
+                recordFailure();
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.warn("Storage call {} {} failed ({}), retrying", request.method(), request.uri(), e.getMessage());
+            } finally {
+                // Interrupted, or the client threw before storage was reached (e.g. a body that could not be opened)
+                if (!reported) {
+                    release();
+                }
+            }
+            Thread.sleep(backoffMillis(attempt));
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status / 100 == 5;
+    }
+
+    // Full jitter, so callers that failed together do not retry together
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private synchronized void acquire() throws StorageUnavailableException {
+        if (consecutiveFailures < failureThreshold) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntil || trialInFlight) {
+            throw new StorageUnavailableException("Storage is unavailable, not calling it for another "
+                    + Math.max(openUntil - now, 0) + " ms");
+        }
+        // Half-open: let one call through to find out whether storage is back
+        trialInFlight = true;
+    }
+
+    // A call that ended without telling us anything about storage
+    private synchronized void release() {
+        trialInFlight = false;
+    }
+
+    private synchronized void recordSuccess() {
+        if (consecutiveFailures >= failureThreshold) {
+            logger.info("Storage is reachable again, closing the circuit");
+        }
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (consecutiveFailures >= failureThreshold) {
+            if (System.currentTimeMillis() >= openUntil) {
+                logger.warn("Storage failed {} times in a row, failing fast for {} ms", consecutiveFailures, openMs);
+            }
+            openUntil = System.currentTimeMillis() + openMs;
+        }
+    }
+
+    private IOException failure(String what, HttpResponse<String> response) {
+        return new IOException(what + " failed. Status: " + response.statusCode() + ", " + describe(response.body()));
+    }
+
+    // Supabase errors are JSON ({"statusCode", "error", "message"}); fall back to the raw body
+    private String describe(String body) {
+        if (body == null || body.isBlank()) {
+            return "no response body";
+        }
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            if (json.hasNonNull("message")) {
+                return json.path("error").asText("error") + ": " + json.get("message").asText();
+            }
+        } catch (IOException ignored) {
+            // not JSON
+        }
+        return "Response: " + body;
+    }
+
+}
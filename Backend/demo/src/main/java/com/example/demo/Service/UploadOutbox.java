@@ -0,0 +1,447 @@
+package com.example.demo.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.UploadOutboxEntry;
+
+/**
+ * Takes uploads off the request thread: spooled to disk and recorded in
+ * upload_outbox, then sent by this node's dispatcher with retries.
+ */
+@Service
+public class UploadOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadOutbox.class);
+
+    private static final String INSERT_ENTRY =
+            "INSERT INTO upload_outbox (node, object_path, url, content_type, spool_file, size, sha256, status, attempts, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 'PENDING', 0, ?)";
+
+    private static final String PENDING_BYTES =
+            "SELECT COALESCE(SUM(size), 0) FROM upload_outbox WHERE node = ? AND status = 'PENDING'";
+
+    private static final String CLAIM_BATCH =
+            "SELECT id, object_path, url, content_type, spool_file, size, sha256, attempts FROM upload_outbox "
+            + "WHERE node = ? AND status = 'PENDING' AND (next_attempt_at IS NULL OR next_attempt_at <= ?) "
+            + "ORDER BY id LIMIT ?";
+
+    // Older entries for a path that has a newer upload queued or landed would overwrite it if sent
+    private static final String SUPERSEDE =
+            "UPDATE upload_outbox o SET status = 'DONE', last_error = 'Superseded' "
+            + "WHERE o.node = ? AND o.status = 'PENDING' AND EXISTS (SELECT 1 FROM upload_outbox n "
+            + "WHERE n.object_path = o.object_path AND n.id > o.id AND n.status <> 'FAILED') "
+            + "RETURNING o.spool_file";
+
+    private static final String FINISH_ENTRY =
+            "UPDATE upload_outbox SET status = ?, attempts = ?, last_error = ? WHERE id = ?";
+
+    private static final String RETRY_ENTRY =
+            "UPDATE upload_outbox SET attempts = ?, last_error = ?, next_attempt_at = ? WHERE id = ?";
+
+    private static final String PENDING_BY_SHA =
+            "SELECT object_path FROM upload_outbox WHERE sha256 = ? AND status = 'PENDING' LIMIT 1";
+
+    private static final String PENDING_URL =
+            "SELECT COUNT(*) FROM upload_outbox WHERE url = ? AND status = 'PENDING'";
+
+    private static final String PENDING_SPOOL =
+            "SELECT id, spool_file, attempts FROM upload_outbox WHERE node = ? AND status = 'PENDING'";
+
+    private static final String PURGE_DONE =
+            "DELETE FROM upload_outbox WHERE status = 'DONE' AND created_at < ?";
+
+    // Entities pointing at a URL with nothing left pending: AVAILABLE, unless every upload of it failed
+    private static final String[] RECONCILE = {
+            reconcile("blog", "image_url", "image_status"),
+            reconcile("exam", "image", "image_status"),
+            reconcile("exam", "syllabus", "syllabus_status"),
+    };
+
+    private static String reconcile(String table, String urlColumn, String statusColumn) {
+        String rows = "SELECT 1 FROM upload_outbox o WHERE o.url = " + table + "." + urlColumn + " AND o.status = ";
+        return "UPDATE " + table + " SET " + statusColumn + " = CASE WHEN EXISTS (" + rows + "'FAILED') "
+                + "AND NOT EXISTS (" + rows + "'DONE') THEN 'FAILED' ELSE 'AVAILABLE' END "
+                + "WHERE " + statusColumn + " = 'PENDING' AND NOT EXISTS (" + rows + "'PENDING')";
+    }
+
+    /** Entity status once nothing is pending for its URL. */
+    public static final String AVAILABLE = "AVAILABLE";
+
+    /** An upload that has landed in storage. */
+    public record Landed(String objectPath, String url, String contentType, long size, String sha256) { }
+
+    private record Entry(long id, String objectPath, String url, String contentType, Path spoolFile,
+                         long size, String sha256, int attempts) { }
+
+    @Autowired
+    private ObjectStorage objectStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${storage.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.outbox.dir:${java.io.tmpdir}/outbox}")
+    private String spoolDir;
+
+    // Entries are dispatched by the node holding their spool file; empty generates one kept in the spool
+    @Value("${storage.outbox.node:}")
+    private String configuredNode;
+
+    @Value("${storage.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${storage.outbox.concurrency:4}")
+    private int concurrency;
+
+    @Value("${storage.outbox.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${storage.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${storage.outbox.retry-base-seconds:5}")
+    private long retryBaseSeconds;
+
+    @Value("${storage.outbox.retry-max-seconds:900}")
+    private long retryMaxSeconds;
+
+    // Past this much waiting on this node, uploads go straight to storage on the request thread again
+    @Value("${storage.outbox.max-pending-bytes:2147483648}")
+    private long maxPendingBytes;
+
+    @Value("${storage.outbox.keep-done-hours:24}")
+    private long keepDoneHours;
+
+    private String node;
+    private Path spool;
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private Thread dispatcher;
+    private ExecutorService senders;
+    private final List<Consumer<Landed>> landedListeners = new CopyOnWriteArrayList<>();
+
+    /** Called on the dispatcher thread for every upload that lands, once its entry is DONE and before entities are updated. */
+    public void addLandedListener(Consumer<Landed> listener) {
+        landedListeners.add(listener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        spool = LocalNode.directory(spoolDir, "storage.outbox.dir");
+        node = LocalNode.nodeId(configuredNode, spool);
+
+        AtomicInteger count = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(concurrency, 1), runnable -> {
+            Thread thread = new Thread(runnable, "upload-outbox-sender-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "upload-outbox");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        logger.info("Upload outbox for node {} spooling to {}", node, spool);
+    }
+
+    /**
+     * Spools {@code body} and queues it for upload to {@code objectPath}.
+     * Returns the URL it will be served from, or {@code null} if the outbox
+     * is off or full and the caller should upload directly.
+     */
+    public String enqueue(String objectPath, String contentType, ObjectStorage.BodySource body, long size, String sha256)
+            throws IOException {
+        if (!hasRoom(objectPath, size)) {
+            return null;
+        }
+        Path file = Files.createTempFile(spool, "upload-", ".spool");
+        try {
+            copy(body, file, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return insert(objectPath, contentType, file, size, sha256);
+    }
+
+    /**
+     * Same as {@link #enqueue(String, String, ObjectStorage.BodySource, long, String)}
+     * for a file the caller is done with: it is moved into the spool rather
+     * than copied (a rename on the same file system). On {@code null} the
+     * file is left where it was.
+     */
+    public String enqueue(String objectPath, String contentType, Path source, String sha256) throws IOException {
+        long size = Files.size(source);
+        if (!hasRoom(objectPath, size)) {
+            return null;
+        }
+        Path file = Files.createTempFile(spool, "upload-", ".spool");
+        try {
+            Files.move(source, file, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return insert(objectPath, contentType, file, size, sha256);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean hasRoom(String objectPath, long size) {
+        if (!running) {
+            return false;
+        }
+        Long pending = jdbcTemplate.queryForObject(PENDING_BYTES, Long.class, node);
+        if (pending != null && pending + size > maxPendingBytes) {
+            logger.warn("Upload outbox on {} holds {} bytes; uploading {} directly", node, pending, objectPath);
+            return false;
+        }
+        return true;
+    }
+
+    private String insert(String objectPath, String contentType, Path file, long size, String sha256) throws IOException {
+        String url = objectStorage.publicUrl(objectPath);
+        try {
+            jdbcTemplate.update(INSERT_ENTRY, node, objectPath, url, contentType, file.toString(), size, sha256,
+                    LocalDateTime.now());
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        // Inside a transaction the row only exists once it commits; a rollback leaves nothing to send
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        wake();
+                    } else {
+                        deleteQuietly(file);
+                    }
+                }
+            });
+        } else {
+            wake();
+        }
+        return url;
+    }
+
+    /** Object path of a pending upload with this content, if there is one. */
+    public String pendingPathFor(String sha256) {
+        if (!enabled) {
+            return null;
+        }
+        List<String> paths = jdbcTemplate.queryForList(PENDING_BY_SHA, String.class, sha256);
+        return paths.isEmpty() ? null : paths.get(0);
+    }
+
+    /** Status an entity pointing at {@code url} should carry: null, PENDING or AVAILABLE. */
+    public String statusOf(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        if (!enabled) {
+            return AVAILABLE;
+        }
+        Long pending = jdbcTemplate.queryForObject(PENDING_URL, Long.class, url);
+        return pending != null && pending > 0 ? UploadOutboxEntry.PENDING : AVAILABLE;
+    }
+
+    public void wake() {
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    private void dispatchLoop() {
+        recoverMissingSpool();
+        long lastPurge = 0;
+        while (running) {
+            int claimed = 0;
+            try {
+                claimed = dispatchOnce();
+                // Also catches entities saved after their upload had already landed
+                for (String sql : RECONCILE) {
+                    jdbcTemplate.update(sql);
+                }
+                if (System.currentTimeMillis() - lastPurge > TimeUnit.HOURS.toMillis(1)) {
+                    jdbcTemplate.update(PURGE_DONE, LocalDateTime.now().minusHours(keepDoneHours));
+                    lastPurge = System.currentTimeMillis();
+                }
+            } catch (Exception e) {
+                logger.warn("Upload outbox dispatch failed: {}", e.getMessage());
+            }
+            if (claimed < batchSize && running) {
+                synchronized (wakeUp) {
+                    try {
+                        wakeUp.wait(pollIntervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Sends one batch; returns the number of entries attempted. */
+    int dispatchOnce() throws InterruptedException {
+        jdbcTemplate.queryForList(SUPERSEDE, String.class, node).forEach(file -> deleteQuietly(Path.of(file)));
+        List<Entry> batch = jdbcTemplate.query(CLAIM_BATCH, (rs, rowNum) -> new Entry(
+                rs.getLong("id"), rs.getString("object_path"), rs.getString("url"), rs.getString("content_type"),
+                Path.of(rs.getString("spool_file")), rs.getLong("size"), rs.getString("sha256"), rs.getInt("attempts")),
+                node, LocalDateTime.now(), batchSize);
+
+        List<Future<?>> sends = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            sends.add(senders.submit(() -> {
+                objectStorage.upload(entry.objectPath(), entry.contentType(),
+                        () -> Files.newInputStream(entry.spoolFile()), entry.size(), true);
+                return null;
+            }));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            try {
+                sends.get(i).get();
+                landed(entry);
+            } catch (ExecutionException e) {
+                failed(entry, e.getCause());
+            }
+        }
+        return batch.size();
+    }
+
+    private void landed(Entry entry) {
+        // DONE first, so a listener's view of the outbox already includes this upload
+        jdbcTemplate.update(FINISH_ENTRY, UploadOutboxEntry.DONE, entry.attempts() + 1, null, entry.id());
+        Landed landed = new Landed(entry.objectPath(), entry.url(), entry.contentType(), entry.size(), entry.sha256());
+        for (Consumer<Landed> listener : landedListeners) {
+            try {
+                listener.accept(landed);
+            } catch (Exception e) {
+                logger.warn("Upload outbox listener failed for {}: {}", entry.objectPath(), e.getMessage());
+            }
+        }
+        deleteQuietly(entry.spoolFile());
+    }
+
+    private void failed(Entry entry, Throwable error) {
+        int attempts = entry.attempts() + 1;
+        String message = truncate(error.getMessage());
+        if (attempts >= maxAttempts) {
+            // The spool file is kept so the upload can still be recovered by hand
+            logger.error("Giving up on upload of {} after {} attempts (spool file {}): {}",
+                    entry.objectPath(), attempts, entry.spoolFile(), message);
+            jdbcTemplate.update(FINISH_ENTRY, UploadOutboxEntry.FAILED, attempts, message, entry.id());
+            return;
+        }
+        logger.warn("Upload of {} failed (attempt {}), retrying: {}", entry.objectPath(), attempts, message);
+        jdbcTemplate.update(RETRY_ENTRY, attempts, message, LocalDateTime.now().plusSeconds(
+                LocalNode.backoffSeconds(retryBaseSeconds, retryMaxSeconds, attempts)), entry.id());
+    }
+
+    // Entries whose spool file is gone (e.g. a wiped disk) can never be sent
+    private void recoverMissingSpool() {
+        try {
+            int[] pending = {0};
+            jdbcTemplate.query(PENDING_SPOOL, rs -> {
+                pending[0]++;
+                if (!Files.exists(Path.of(rs.getString("spool_file")))) {
+                    jdbcTemplate.update(FINISH_ENTRY, UploadOutboxEntry.FAILED, rs.getInt("attempts"),
+                            "Spool file missing", rs.getLong("id"));
+                }
+            }, node);
+            if (pending[0] > 0) {
+                logger.info("Upload outbox on {} resuming {} pending uploads", node, pending[0]);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not check pending uploads: {}", e.getMessage());
+        }
+    }
+
+    private static void copy(ObjectStorage.BodySource body, Path file, long size) throws IOException {
+        try (InputStream in = body.open(); ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                long copied = target.transferFrom(source, position, size - position);
+                if (copied == 0) {
+                    throw new IOException("Upload body ended after " + position + " of " + size + " bytes");
+                }
+                position += copied;
+            }
+            // The request is answered as if stored, so the bytes must survive a crash
+            target.force(true);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete spool file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (dispatcher == null) {
+            return;
+        }
+        // Unsent entries stay PENDING and go out after the restart
+        dispatcher.interrupt();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        senders.shutdownNow();
+    }
+}
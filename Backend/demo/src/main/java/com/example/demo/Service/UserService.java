@@ -2,16 +2,18 @@ package com.example.demo.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.demo.Repository.AdminRepository;
+import com.example.demo.Repository.CertificateRecordRepository;
 import com.example.demo.Repository.ExamRepository;
 import com.example.demo.Repository.SalesManRepository;
 import com.example.demo.Repository.SchoolRepository;
@@ -20,6 +22,7 @@ import com.example.demo.dto.ExamSummaryDTO;
 import com.example.demo.dto.UserDTO;
 import com.example.demo.dto.UserExamResultDTO;
 import com.example.demo.model.Admin;
+import com.example.demo.model.CertificateRecord;
 import com.example.demo.model.Exam;
 import com.example.demo.model.User;
 
@@ -38,11 +41,11 @@ public class UserService {
     @Autowired
     private AdminRepository adminRepository;
     
-    @Value("${supabase.url}")
-    private String supabaseUrl;
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
 
-    @Value("${supabase.bucket}")
-    private String bucket;
+    @Autowired
+    private CertificateIndexService certificateIndexService;
 
     @Autowired
     private UserRepository userRepository;
@@ -209,6 +212,8 @@ public class UserService {
     public List<UserExamResultDTO> getUserExamResults(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        Map<UUID, CertificateRecord> certificates = certificateRecordRepository.findByUserId(userId).stream()
+                .collect(Collectors.toMap(CertificateRecord::getExamId, Function.identity()));
 
         return user.getUserExams().stream().map(ue -> {
             Exam exam = ue.getExam();
@@ -220,15 +225,9 @@ public class UserService {
             dto.setTime(exam.getTime());
             dto.setPercentage(ue.getPercentage());
 
-            // Construct Supabase public file path
-            String safeUserName = user.getName().trim().replaceAll("[^a-zA-Z0-9_-]", "_");
-            String safeSubject = exam.getSubject().trim().replaceAll("[^a-zA-Z0-9_-]", "_");
-
-            String filePath = "certificates/" + safeUserName + "/" + safeSubject + ".pdf";
-            String certificateUrl = supabaseUrl + "/storage/v1/object/public/" + bucket + "/" + filePath;
-
-            // OPTIONAL: verify if the certificate actually exists
-            dto.setCertificateUrl(certificateUrl); // set as null if you validate and not found
+            // Null until a certificate has been generated for this exam
+            CertificateRecord certificate = certificates.get(exam.getId());
+            dto.setCertificateUrl(certificate != null ? certificateIndexService.urlFor(certificate) : null);
 
             return dto;
         }).collect(Collectors.toList());
@@ -0,0 +1,30 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.Service.CertificateWarmupService;
+
+/**
+ * Part of the readiness group: OUT_OF_SERVICE until the certificate
+ * renderer has been warmed up, so load balancers skip cold nodes.
+ */
+@Component
+public class CertificateWarmupHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private CertificateWarmupService warmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder health = warmupService.isFinished() ? Health.up() : Health.outOfService();
+        health.withDetail("rendered", warmupService.getRendered())
+                .withDetail("planned", warmupService.getPlanned());
+        if (warmupService.getFailure() != null) {
+            health.withDetail("failure", warmupService.getFailure());
+        }
+        return health.build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.demo.config;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.AlwaysValidCacheEntryValidity;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.AbstractTemplateResolver;
+import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.templateresource.StringTemplateResource;
+
+import com.example.demo.Service.CertificateTemplateRegistry;
+
+/**
+ * Resolves certificate templates uploaded at runtime ahead of the classpath
+ * resolver (spring.thymeleaf.template-resolver-order=1). Parsed templates are
+ * cached by the engine until the registry clears them on update.
+ */
+@Component
+public class DatabaseTemplateResolver extends AbstractTemplateResolver {
+
+    @Autowired
+    private CertificateTemplateRegistry templateRegistry;
+
+    public DatabaseTemplateResolver() {
+        setName("certificate-templates");
+        setOrder(0);
+    }
+
+    @Override
+    protected boolean computeResolvable(IEngineConfiguration configuration, String ownerTemplate, String template,
+                                        Map<String, Object> templateResolutionAttributes) {
+        return CertificateTemplateRegistry.isValidName(template)
+                && templateRegistry.get(template) != null;
+    }
+
+    @Override
+    protected ITemplateResource computeTemplateResource(IEngineConfiguration configuration, String ownerTemplate,
+                                                        String template, Map<String, Object> templateResolutionAttributes) {
+        return new StringTemplateResource(templateRegistry.get(template).html());
+    }
+
+    @Override
+    protected TemplateMode computeTemplateMode(IEngineConfiguration configuration, String ownerTemplate,
+                                               String template, Map<String, Object> templateResolutionAttributes) {
+        return TemplateMode.HTML;
+    }
+
+    @Override
+    protected ICacheEntryValidity computeValidity(IEngineConfiguration configuration, String ownerTemplate,
+                                                  String template, Map<String, Object> templateResolutionAttributes) {
+        return AlwaysValidCacheEntryValidity.INSTANCE;
+    }
+}
@@ -0,0 +1,462 @@
+package com.example.demo.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the parts of the Supabase storage API the app calls: object
+ * upload (POST creates unless x-upsert is set, PUT always replaces), public and authenticated GET, list and
+ * delete. Objects are kept in a local directory. Latency, a bandwidth cap
+ * shared by all transfers, injected error answers and dropped connections
+ * make it usable for benchmarks and retry tests without the real project.
+ * Runs in the "bench" profile; tests can also start one directly.
+ */
+@Component
+@Profile("bench")
+public class FakeStorageServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeStorageServer.class);
+
+    private static final String API_PREFIX = "/storage/v1/object/";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Defaults suit a server started directly by a test; the bench profile sets them from properties
+    @Value("${storage.fake.port:54321}")
+    private int port = 0;
+
+    // Empty = a temporary directory, removed on stop
+    @Value("${storage.fake.dir:}")
+    private String dir = "";
+
+    @Value("${storage.fake.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${storage.fake.jitter-ms:0}")
+    private long jitterMs;
+
+    // Shared by every request and response, like a single uplink; 0 = unlimited
+    @Value("${storage.fake.bandwidth-bytes-per-second:0}")
+    private long bandwidthBytesPerSecond;
+
+    // Fraction of requests answered with error-status after their body is read
+    @Value("${storage.fake.error-rate:0}")
+    private double errorRate;
+
+    @Value("${storage.fake.error-status:503}")
+    private int errorStatus = 503;
+
+    // Fraction of requests whose connection is dropped half way through the request body
+    @Value("${storage.fake.reset-rate:0}")
+    private double resetRate;
+
+    @Value("${storage.fake.threads:32}")
+    private int threads = 32;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private Path root;
+    private boolean temporaryRoot;
+    private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile int failNextStatus = 503;
+    private final AtomicInteger loseNext = new AtomicInteger();
+    private long linkFreeAt; // guarded by this
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong injectedFaults = new AtomicLong();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (dir == null || dir.isBlank()) {
+            root = Files.createTempDirectory("fake-storage");
+            temporaryRoot = true;
+        } else {
+            root = Path.of(dir).toAbsolutePath();
+            Files.createDirectories(root);
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, "fake-storage-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext(API_PREFIX, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Fake object storage listening on {} (latency {}+{} ms, {} B/s, error rate {}, reset rate {}), objects in {}",
+                baseUrl(), latencyMs, jitterMs, bandwidthBytesPerSecond == 0 ? "unlimited" : bandwidthBytesPerSecond,
+                errorRate, resetRate, root);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Fake object storage served {} requests ({} bytes in, {} bytes out, {} injected faults)",
+                requests.get(), bytesReceived.get(), bytesSent.get(), injectedFaults.get());
+        if (temporaryRoot) {
+            deleteTree(root);
+        }
+        server = null;
+    }
+
+    /** What to pass as {@code supabase.url}. */
+    public String baseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Answers the next {@code count} requests with {@code status}, regardless of the error rate. */
+    public void failNext(int count, int status) {
+        failNextStatus = status;
+        failNext.set(count);
+    }
+
+    /** Stores the next {@code count} uploads but answers them with 503, as if the response was lost. */
+    public void loseNextUploadResponses(int count) {
+        loseNext.set(count);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getInjectedFaults() {
+        return injectedFaults.get();
+    }
+
+    /** The stored copy of {@code bucket/objectPath}, or {@code null}. */
+    public Path objectFile(String bucket, String objectPath) {
+        Path file = resolve(bucket + "/" + objectPath);
+        return file != null && Files.isRegularFile(file) ? file : null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            delay();
+
+            if (injectFault(exchange)) {
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            String rest = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+            if (rest.startsWith("public/") && ("GET".equals(method) || "HEAD".equals(method))) {
+                download(exchange, rest.substring("public/".length()));
+                return;
+            }
+            if (!isAuthorized(exchange)) {
+                drain(exchange);
+                sendError(exchange, 400, "403", "Unauthorized", "Missing apikey or Authorization header");
+                return;
+            }
+            if (rest.startsWith("list/") && "POST".equals(method)) {
+                list(exchange, rest.substring("list/".length()));
+            } else if ("PUT".equals(method) || "POST".equals(method)) {
+                upload(exchange, rest);
+            } else if ("GET".equals(method) || "HEAD".equals(method)) {
+                download(exchange, rest);
+            } else if ("DELETE".equals(method)) {
+                delete(exchange, rest);
+            } else {
+                sendError(exchange, 405, "405", "Method Not Allowed", method + " is not supported");
+            }
+        } catch (IOException e) {
+            logger.debug("Fake storage request failed: {}", e.getMessage()); // usually the client went away
+        }
+    }
+
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (resetRate > 0 && random.nextDouble() < resetRate) {
+            injectedFaults.incrementAndGet();
+            // Take part of the body, then close without answering
+            InputStream in = exchange.getRequestBody();
+            in.readNBytes(random.nextInt(BUFFER_BYTES));
+            exchange.close();
+            return true;
+        }
+        int status = 0;
+        if (failNext.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+            status = failNextStatus;
+        } else if (errorRate > 0 && random.nextDouble() < errorRate) {
+            status = errorStatus;
+        }
+        if (status == 0) {
+            return false;
+        }
+        injectedFaults.incrementAndGet();
+        drain(exchange);
+        sendError(exchange, status, String.valueOf(status), "Injected", "Fault injected by the fake storage server");
+        return true;
+    }
+
+    private void upload(HttpExchange exchange, String key) throws IOException {
+        Path file = resolve(key);
+        if (file == null || key.indexOf('/') < 0) {
+            drain(exchange);
+            sendError(exchange, 400, "400", "InvalidKey", "Invalid key: " + key);
+            return;
+        }
+        // Like Supabase: only POST refuses an existing object, and x-upsert lifts that
+        boolean upsert = "PUT".equals(exchange.getRequestMethod())
+                || "true".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("x-upsert"));
+        if (!upsert && Files.exists(file)) {
+            drain(exchange);
+            sendError(exchange, 400, "409", "Duplicate", "The resource already exists");
+            return;
+        }
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_BYTES];
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    throttle(read);
+                    out.write(buffer, 0, read);
+                    bytesReceived.addAndGet(read);
+                }
+            }
+            synchronized (this) {
+                if (!upsert && Files.exists(file)) {
+                    sendError(exchange, 400, "409", "Duplicate", "The resource already exists");
+                    return;
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        contentTypes.put(key, contentType != null ? contentType : "application/octet-stream");
+        if (loseNext.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+            injectedFaults.incrementAndGet();
+            sendError(exchange, 503, "503", "Injected", "Stored, but the answer was lost");
+            return;
+        }
+        sendJson(exchange, 200, Map.of("Key", key));
+    }
+
+    private void download(HttpExchange exchange, String key) throws IOException {
+        Path file = resolve(key);
+        if (file == null || !Files.isRegularFile(file)) {
+            sendError(exchange, 404, "404", "not_found", "Object not found");
+            return;
+        }
+        long length = Files.size(file);
+        exchange.getResponseHeaders().set("Content-Type", contentTypes.getOrDefault(key, "application/octet-stream"));
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+        try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                throttle(read);
+                out.write(buffer, 0, read);
+                bytesSent.addAndGet(read);
+            }
+        }
+    }
+
+    // Body: {"prefix": "folder", "limit": 100, "offset": 0}; answers the files and folders directly under prefix
+    private void list(HttpExchange exchange, String bucket) throws IOException {
+        JsonNode request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = objectMapper.readTree(in);
+        }
+        String prefix = request == null ? "" : request.path("prefix").asText("");
+        int limit = request == null ? 100 : request.path("limit").asInt(100);
+        int offset = request == null ? 0 : request.path("offset").asInt(0);
+
+        Path folder = resolve(prefix.isEmpty() ? bucket : bucket + "/" + prefix);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        if (folder != null && Files.isDirectory(folder)) {
+            Set<Path> children = new TreeSet<>(Comparator.comparing(path -> path.getFileName().toString()));
+            try (Stream<Path> files = Files.list(folder)) {
+                files.filter(path -> !path.getFileName().toString().startsWith(".")).forEach(children::add);
+            }
+            for (Path child : children.stream().skip(offset).limit(limit).toList()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("name", child.getFileName().toString());
+                if (Files.isDirectory(child)) {
+                    entry.put("id", null);
+                    entry.put("metadata", null);
+                } else {
+                    String key = root.relativize(child).toString().replace('\\', '/');
+                    String modified = Instant.ofEpochMilli(Files.getLastModifiedTime(child).toMillis()).toString();
+                    entry.put("id", Integer.toHexString(key.hashCode()));
+                    entry.put("updated_at", modified);
+                    entry.put("created_at", modified);
+                    entry.put("metadata", Map.of(
+                            "size", Files.size(child),
+                            "mimetype", contentTypes.getOrDefault(key, "application/octet-stream")));
+                }
+                entries.add(entry);
+            }
+        }
+        sendJson(exchange, 200, entries);
+    }
+
+    private void delete(HttpExchange exchange, String key) throws IOException {
+        Path file = resolve(key);
+        if (file == null || !Files.deleteIfExists(file)) {
+            sendError(exchange, 404, "404", "not_found", "Object not found");
+            return;
+        }
+        contentTypes.remove(key);
+        sendJson(exchange, 200, Map.of("message", "Successfully deleted"));
+    }
+
+    private static boolean isAuthorized(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return exchange.getRequestHeaders().getFirst("apikey") != null
+                || (authorization != null && authorization.startsWith("Bearer "));
+    }
+
+    // bucket/path below root, or null for anything that tries to leave it
+    private Path resolve(String key) {
+        if (key.isEmpty() || key.contains("\\")) {
+            return null;
+        }
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                return null;
+            }
+        }
+        Path file = root.resolve(key).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    private void delay() {
+        long millis = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (millis > 0) {
+            sleep(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    // Books the bytes on the shared link and waits until they would have gone through it
+    private void throttle(int bytes) {
+        if (bandwidthBytesPerSecond <= 0) {
+            return;
+        }
+        long done;
+        synchronized (this) {
+            long start = Math.max(System.nanoTime(), linkFreeAt);
+            linkFreeAt = start + bytes * 1_000_000_000L / bandwidthBytesPerSecond;
+            done = linkFreeAt;
+        }
+        sleep(done - System.nanoTime());
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            bytesReceived.addAndGet(in.transferTo(OutputStream.nullOutputStream()));
+        }
+    }
+
+    // Supabase answers errors as {"statusCode", "error", "message"}, often with HTTP 400 and the real code inside
+    private void sendError(HttpExchange exchange, int status, String statusCode, String error, String message)
+            throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("statusCode", statusCode);
+        body.put("error", error);
+        body.put("message", message);
+        sendJson(exchange, status, body);
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static void deleteTree(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", dir, e.getMessage());
+        }
+    }
+}
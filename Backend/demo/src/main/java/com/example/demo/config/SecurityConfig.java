@@ -37,6 +37,8 @@ public class SecurityConfig {    @Bean
         config.setAllowedOriginPatterns(List.of("*"));
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         config.setAllowedHeaders(List.of("*"));
+        // Readable by browser clients; the certificate URL lists page with it
+        config.setExposedHeaders(List.of("X-Next-Cursor"));
         config.setAllowCredentials(false);
         config.setMaxAge(3600L);
 
@@ -8,11 +8,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.example.demo.Repository.BlogRepository;
-import com.example.demo.Service.SupabaseService;
+import com.example.demo.Service.ImageVariantService;
+import com.example.demo.Service.UploadOutbox;
 import com.example.demo.model.Blog;
 
 @RestController
@@ -24,7 +27,10 @@ public class BlogController {
     private BlogRepository blogRepository;
 
     @Autowired
-    private SupabaseService supabaseService;
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -47,12 +53,13 @@ public class BlogController {
                 .orElse(ResponseEntity.notFound().build());
     }    
     @PostMapping(consumes = {"multipart/form-data"})
+    @Transactional // the image's outbox entry commits with the post
     public ResponseEntity<Blog> createBlog(@RequestPart("blog") String blogJson,
                                            @RequestPart(value = "image", required = false) MultipartFile image) {
         try {
             Blog blog = objectMapper.readValue(blogJson, Blog.class);            // Handle image upload - prioritize file upload over URL
             if (image != null && !image.isEmpty()) {
-                String imageUrl = supabaseService.uploadFile(image, "blog-images");
+                String imageUrl = imageVariantService.upload(image, "blog-images");
                 blog.setImageUrl(imageUrl);
             } else if (blog.getImageUrl() != null && blog.getImageUrl().isEmpty()) {
                 
@@ -62,22 +69,30 @@ public class BlogController {
             // If no file uploaded but imageUrl is provided in JSON, keep the URL
             // (imageUrl is already set from JSON parsing)
 
+            blog.setImageVariants(imageVariantService.variantsFor(blog.getImageUrl()));
+            blog.setImageStatus(uploadOutbox.statusOf(blog.getImageUrl()));
             blog.setSlug(generateSlug(blog.getTitle()));
             blog.setPublishedDate(LocalDate.now());
             return ResponseEntity.ok(blogRepository.save(blog));
 
         } catch (Exception e) {
             e.printStackTrace(); // Add logging for debugging
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.badRequest().build();
         }
     }
 
     @PutMapping(value = "/{id}", consumes = {"multipart/form-data"})
+    @Transactional
     public ResponseEntity<Blog> updateBlog(@PathVariable UUID id,
                                            @RequestPart("blog") String blogJson,
                                            @RequestPart(value = "image", required = false) MultipartFile image) {
         try {
             Blog updatedBlog = objectMapper.readValue(blogJson, Blog.class);
+            // Uploaded up front because the lambda below cannot throw checked exceptions
+            String uploadedUrl = image != null && !image.isEmpty()
+                    ? imageVariantService.upload(image, "blog-images")
+                    : null;
 
             return blogRepository.findById(id)
                     .map(existingBlog -> {
@@ -89,14 +104,15 @@ public class BlogController {
                         existingBlog.setCategory(updatedBlog.getCategory());
                         existingBlog.setTags(updatedBlog.getTags());                        existingBlog.setFeatured(updatedBlog.getFeatured());
                         existingBlog.setReadTime(updatedBlog.getReadTime());                        // Handle image update - prioritize file upload over URL
-                        if (image != null && !image.isEmpty()) {
-                            String imageUrl = supabaseService.uploadFile(image, "blog-images");
-                            existingBlog.setImageUrl(imageUrl);
+                        if (uploadedUrl != null) {
+                            existingBlog.setImageUrl(uploadedUrl);
                         } else if (updatedBlog.getImageUrl() != null) {
                             // If no file uploaded but imageUrl is provided in JSON, update the URL
                             // This handles both URL updates and clearing (empty string)
                             existingBlog.setImageUrl(updatedBlog.getImageUrl().isEmpty() ? null : updatedBlog.getImageUrl());
                         }
+                        existingBlog.setImageVariants(imageVariantService.variantsFor(existingBlog.getImageUrl()));
+                        existingBlog.setImageStatus(uploadOutbox.statusOf(existingBlog.getImageUrl()));
 
                         return ResponseEntity.ok(blogRepository.save(existingBlog));
                     })
@@ -104,6 +120,7 @@ public class BlogController {
 
         } catch (Exception e) {
             e.printStackTrace(); // Add logging for debugging
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.badRequest().build();
         }}
 
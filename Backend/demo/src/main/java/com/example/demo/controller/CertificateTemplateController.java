@@ -1,52 +1,69 @@
 package com.example.demo.controller;
 
+import com.example.demo.Service.CertificateDownloadService;
+import com.example.demo.Service.CertificateIndexService;
+import com.example.demo.Service.CertificateJobService;
+import com.example.demo.Service.CertificateRecordBackfill;
 import com.example.demo.Service.CertificateTemplateService;
+import com.example.demo.dto.CertificateBatchReport;
+import com.example.demo.dto.CertificateIndexEntry;
+import com.example.demo.dto.CertificateIndexPage;
+import com.example.demo.dto.CertificateJobStatus;
 import com.example.demo.dto.CertificateRequest;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.example.demo.dto.RenderedPdf;
+import com.example.demo.model.CertificateJob;
+import com.example.demo.model.CertificateTemplateAsset;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.*;
-import org.springframework.ui.Model;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
-import java.io.ByteArrayOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 @RestController
 @RequestMapping("/api/templates")
 public class CertificateTemplateController {
 
+    private static final long MAX_TEMPLATE_ASSET_BYTES = 5L * 1024 * 1024;
+
     private final CertificateTemplateService service;
+    private final CertificateJobService jobService;
     private final TemplateEngine templateEngine;
 
-    @Value("${supabase.url}")
-    private String supabaseUrl;
+    @Autowired
+    private CertificateDownloadService downloadService;
 
-    @Value("${supabase.bucket}")
-    private String bucket;
+    @Autowired
+    private CertificateIndexService indexService;
 
-    @Value("${supabase.key}")
-    private String supabaseKey;
+    @Autowired
+    private CertificateRecordBackfill recordBackfill;
+
+    // Queue /generate batches for the render workers instead of rendering on this API node
+    @Value("${certificate.jobs.offload-generate:false}")
+    private boolean offloadGenerate;
 
     @Autowired
     public CertificateTemplateController(
             CertificateTemplateService service,
+            CertificateJobService jobService,
             TemplateEngine templateEngine
     ) {
         this.service = service;
+        this.jobService = jobService;
         this.templateEngine = templateEngine;
     }
 
@@ -67,21 +84,21 @@ public class CertificateTemplateController {
     }
 
     @PostMapping(value = "/generate", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ApiResponse> generateAndUploadCertificates(@RequestBody List<CertificateRequest> requests) {
+    public ResponseEntity<?> generateAndUploadCertificates(
+            @RequestBody List<CertificateRequest> requests,
+            @RequestParam(defaultValue = "false") boolean force) {
         try {
             if (requests == null || requests.isEmpty()) {
                 return ResponseEntity.badRequest()
                         .body(new ApiResponse("error", "Request body is empty or invalid"));
             }
+            if (offloadGenerate) {
+                return submitCertificateJob(requests, force);
+            }
 
-            service.processCertificates(requests);
+            CertificateBatchReport report = service.processCertificates(requests, force, result -> { });
 
-            return ResponseEntity.ok(
-                    new ApiResponse("success", "Generated and uploaded " + requests.size() + " certificates")
-            );
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest()
-                    .body(new ApiResponse("error", "Invalid input: " + e.getMessage()));
+            return ResponseEntity.ok(report);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -89,41 +106,67 @@ public class CertificateTemplateController {
         }
     }
 
+    // ✅ Submit a certificate batch as a background job
+    @PostMapping(value = "/jobs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submitCertificateJob(
+            @RequestBody List<CertificateRequest> requests,
+            @RequestParam(defaultValue = "false") boolean force) {
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse("error", "Request body is empty or invalid"));
+        }
+
+        CertificateJob job = jobService.submit(requests, force);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/templates/jobs/" + job.getId()))
+                .body(Map.of("jobId", job.getId(), "status", job.getStatus(), "total", job.getTotal()));
+    }
+
+    // ✅ Job progress: counts, throughput and ETA
+    @GetMapping(value = "/jobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CertificateJobStatus> getCertificateJob(@PathVariable UUID jobId) {
+        return jobService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // ✅ Job progress as server-sent events
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCertificateJob(@PathVariable UUID jobId) {
+        return jobService.subscribe(jobId);
+    }
+
     // ✅ Preview Certificate Template as PDF
     @GetMapping(value = "/preview/{templateName}", produces = MediaType.APPLICATION_PDF_VALUE)
-    public ResponseEntity<byte[]> previewTemplateAsPdf(@PathVariable String templateName) throws IOException {
+    public ResponseEntity<byte[]> previewTemplateAsPdf(
+            @PathVariable String templateName,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
         try {
-            List<String> allowedTemplates = List.of("template1", "template2", "template3");
-            if (!allowedTemplates.contains(templateName)) {
+            if (!service.templateExists(templateName)) {
                 String errorHtml = "<h2>Invalid template: " + templateName + "</h2>";
                 return ResponseEntity.status(400)
                         .contentType(MediaType.TEXT_HTML)
                         .body(errorHtml.getBytes(StandardCharsets.UTF_8));
             }
 
-            // Sample data for preview
-            Context context = new Context();
-            context.setVariable("name", "John Doe");
-            context.setVariable("email", "john@example.com");
-            context.setVariable("phone", "1234567890");
-            context.setVariable("percentage", "95%");
-            context.setVariable("subject", "Mathematics");
-            context.setVariable("date", LocalDate.now().format(DateTimeFormatter.ofPattern("dd MMMM yyyy")));
-
-            // Process HTML with Thymeleaf
-            String html = templateEngine.process(templateName, context);
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            PdfRendererBuilder builder = new PdfRendererBuilder();
-            builder.withHtmlContent(html, null);
-            builder.toStream(outputStream);
-            builder.useFastMode();
-            builder.run();
+            RenderedPdf preview = service.getPreview(templateName);
+
+            // Templates can change at any time, so browsers revalidate; the ETag is a hash of the PDF
+            CacheControl cacheControl = CacheControl.noCache();
+
+            if (ifNoneMatch != null && (ifNoneMatch.contains(preview.getEtag()) || ifNoneMatch.trim().equals("*"))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(preview.getEtag())
+                        .cacheControl(cacheControl)
+                        .build();
+            }
 
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=certificate-preview.pdf")
                     .contentType(MediaType.APPLICATION_PDF)
-                    .body(outputStream.toByteArray());
+                    .eTag(preview.getEtag())
+                    .cacheControl(cacheControl)
+                    .body(preview.getContent());
 
         } catch (Exception e) {
             String errorHtml = "<h2>Failed to render PDF: " + e.getMessage() + "</h2>";
@@ -133,98 +176,206 @@ public class CertificateTemplateController {
         }
     }
 
-    // ✅ Get certificates by student name
-    @GetMapping("/certificates/student/{studentName}")
-    public ResponseEntity<List<String>> getCertificatesByStudent(@PathVariable String studentName) throws IOException, InterruptedException {
-        String path = "certificates/" + studentName + "/";
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(supabaseUrl + "/storage/v1/object/list/" + bucket + "?prefix=" + path))
-                .header("apikey", supabaseKey)
-                .header("Authorization", "Bearer " + supabaseKey)
-                .GET()
-                .build();
-
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    // ✅ Names of every template that can be rendered, bundled and uploaded
+    @GetMapping(value = "/names", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<String>> listTemplates() {
+        return ResponseEntity.ok(service.templateNames());
+    }
 
-        if (response.statusCode() != 200) {
-            return ResponseEntity.status(response.statusCode()).body(List.of("Error: " + response.body()));
+    // ✅ Upload a new template, or a new version of one, with the assets it references as asset:<file name>
+    @PutMapping(value = "/{templateName}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> uploadTemplate(
+            @PathVariable String templateName,
+            @RequestPart("html") MultipartFile html,
+            @RequestPart(value = "assets", required = false) List<MultipartFile> assets,
+            @RequestParam(required = false) String description) {
+        try {
+            List<CertificateTemplateAsset> resolved = new ArrayList<>();
+            for (MultipartFile asset : assets != null ? assets : List.<MultipartFile>of()) {
+                // Assets live in the database and in memory with the compiled template
+                if (asset.getSize() > MAX_TEMPLATE_ASSET_BYTES) {
+                    return ResponseEntity.badRequest().body(new ApiResponse("error",
+                            "Asset " + asset.getOriginalFilename() + " is larger than " + MAX_TEMPLATE_ASSET_BYTES + " bytes"));
+                }
+                String name = Path.of(Objects.requireNonNullElse(asset.getOriginalFilename(), asset.getName()))
+                        .getFileName().toString();
+                String contentType = asset.getContentType() != null ? asset.getContentType()
+                        : URLConnection.guessContentTypeFromName(name);
+                resolved.add(new CertificateTemplateAsset(name, contentType, asset.getBytes()));
+            }
+            service.saveTemplate(templateName, description,
+                    new String(html.getBytes(), StandardCharsets.UTF_8), resolved);
+            return ResponseEntity.ok(new ApiResponse("success", "Template " + templateName + " saved"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ApiResponse("error", "Failed to save template: " + e.getMessage()));
         }
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<Map<String, Object>> files = objectMapper.readValue(response.body(), List.class);
-
-        List<String> urls = files.stream()
-                .map(file -> {
-                    String fileName = (String) file.get("name");
-                    return supabaseUrl + "/storage/v1/object/public/" + bucket + "/" + fileName;
-                })
-                .toList();
-
-        return ResponseEntity.ok(urls);
+    // ✅ Choose the render engine for a template: html or stamp
+    @PutMapping(value = "/{templateName}/engine", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> setRenderEngine(@PathVariable String templateName, @RequestParam String engine) {
+        if (!service.templateExists(templateName)) {
+            return ResponseEntity.badRequest().body(new ApiResponse("error", "Invalid template: " + templateName));
+        }
+        try {
+            service.setRenderEngine(templateName, engine);
+            return ResponseEntity.ok(new ApiResponse("success", templateName + " now renders with " + engine));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ApiResponse("error", "Failed to prepare template: " + e.getMessage()));
+        }
     }
 
-    // ✅ Get certificates by subject name
-    @GetMapping("/certificates/subject/{subjectName}")
-    public ResponseEntity<List<String>> getCertificatesBySubject(@PathVariable String subjectName) throws IOException, InterruptedException {
-        String path = "certificates/";
+    // ✅ Compare the HTML and stamping engines on sample data
+    @GetMapping(value = "/{templateName}/benchmark", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> benchmarkRenderEngines(
+            @PathVariable String templateName,
+            @RequestParam(defaultValue = "20") int iterations) {
+        if (!service.templateExists(templateName)) {
+            return ResponseEntity.badRequest().body(new ApiResponse("error", "Invalid template: " + templateName));
+        }
+        if (iterations < 1 || iterations > 500) {
+            return ResponseEntity.badRequest().body(new ApiResponse("error", "iterations must be between 1 and 500"));
+        }
+        try {
+            return ResponseEntity.ok(service.benchmarkEngines(templateName, iterations));
+        } catch (IOException | IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ApiResponse("error", "Benchmark failed: " + e.getMessage()));
+        }
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(supabaseUrl + "/storage/v1/object/list/" + bucket + "?prefix=" + path))
-                .header("apikey", supabaseKey)
-                .header("Authorization", "Bearer " + supabaseKey)
-                .GET()
-                .build();
+    // ✅ Size of each template's sample certificate under the current output profile
+    @GetMapping(value = "/size-report", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> certificateSizeReport() {
+        return ResponseEntity.ok(service.sizeReport());
+    }
 
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    // ✅ Download one certificate, rendering it on first access in lazy mode
+    @GetMapping("/certificates/user/{userId}/exam/{examId}")
+    public void downloadCertificate(
+            @PathVariable Long userId,
+            @PathVariable UUID examId,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Optional<CertificateDownloadService.CertificateFile> certificate;
+        try {
+            certificate = downloadService.open(userId, examId);
+        } catch (IOException e) {
+            response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to produce certificate: " + e.getMessage());
+            return;
+        }
+        if (certificate.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "No certificate recorded for this user and exam");
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=certificate.pdf");
+        sendFile(certificate.get(), MediaType.APPLICATION_PDF_VALUE, request, response);
+    }
 
-        if (response.statusCode() != 200) {
-            return ResponseEntity.status(response.statusCode()).body(List.of("Error: " + response.body()));
+    // ✅ Thumbnail of one certificate for gallery views
+    @GetMapping("/certificates/user/{userId}/exam/{examId}/thumbnail")
+    public void downloadCertificateThumbnail(
+            @PathVariable Long userId,
+            @PathVariable UUID examId,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Optional<CertificateDownloadService.CertificateFile> thumbnail;
+        try {
+            thumbnail = downloadService.openThumbnail(userId, examId);
+        } catch (IOException e) {
+            response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to produce thumbnail: " + e.getMessage());
+            return;
         }
+        if (thumbnail.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "No certificate recorded for this user and exam");
+            return;
+        }
+        sendFile(thumbnail.get(), MediaType.IMAGE_PNG_VALUE, request, response);
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<Map<String, Object>> files = objectMapper.readValue(response.body(), List.class);
+    private static void sendFile(CertificateDownloadService.CertificateFile cached, String contentType,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // The tag is derived from the content fingerprint, so it doubles as a strong ETag
+        try (cached) {
+            FileResponses.sendPinned(cached.path(), contentType, "\"" + cached.tag() + "\"", request, response);
+        }
+    }
 
-        List<String> urls = files.stream()
-                .filter(file -> ((String) file.get("name")).endsWith("/" + subjectName + ".pdf"))
-                .map(file -> {
-                    String fullPath = (String) file.get("name");
-                    return supabaseUrl + "/storage/v1/object/public/" + bucket + "/" + fullPath;
-                })
-                .toList();
+    // ✅ Get certificates by student name
+    @GetMapping("/certificates/student/{studentName}")
+    public ResponseEntity<?> getCertificatesByStudent(
+            @PathVariable String studentName,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(required = false) String view) {
+        return toListing(indexService.find(null, null, studentName, null, null, null, after, limit), view);
+    }
 
-        return ResponseEntity.ok(urls);
+    // ✅ Get certificates by subject name
+    @GetMapping("/certificates/subject/{subjectName}")
+    public ResponseEntity<?> getCertificatesBySubject(
+            @PathVariable String subjectName,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(required = false) String view) {
+        return toListing(indexService.find(null, null, null, subjectName, null, null, after, limit), view);
     }
 
     // ✅ Get all certificates
     @GetMapping("/certificates/all")
-    public ResponseEntity<List<String>> getAllCertificates() throws IOException, InterruptedException {
-        String path = "certificates/";
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(supabaseUrl + "/storage/v1/object/list/" + bucket + "?prefix=" + path))
-                .header("apikey", supabaseKey)
-                .header("Authorization", "Bearer " + supabaseKey)
-                .GET()
-                .build();
+    public ResponseEntity<?> getAllCertificates(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(required = false) String view) {
+        return toListing(indexService.find(null, null, null, null, null, null, after, limit), view);
+    }
 
-        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    // ✅ Search the certificate index by user, exam, student, subject or issue date
+    @GetMapping(value = "/certificates/index", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CertificateIndexPage> searchCertificates(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) UUID examId,
+            @RequestParam(required = false) String studentName,
+            @RequestParam(required = false) String subject,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(indexService.find(userId, examId, studentName, subject, from, to, after, limit));
+    }
 
-        if (response.statusCode() != 200) {
-            return ResponseEntity.status(response.statusCode()).body(List.of("Error: " + response.body()));
+    // ✅ Record certificates uploaded before the index existed; runs in the background
+    @PostMapping("/certificates/index/backfill")
+    public ResponseEntity<ApiResponse> backfillCertificateIndex() {
+        if (!recordBackfill.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ApiResponse("error", "A backfill is already running"));
         }
+        return ResponseEntity.accepted().body(new ApiResponse("success", "Backfill started"));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<Map<String, Object>> files = objectMapper.readValue(response.body(), List.class);
-
-        List<String> urls = files.stream()
-                .filter(file -> ((String) file.get("name")).endsWith(".pdf"))
-                .map(file -> {
-                    String fullPath = (String) file.get("name");
-                    return supabaseUrl + "/storage/v1/object/public/" + bucket + "/" + fullPath;
-                })
-                .toList();
+    // ?view=gallery returns the index entries, thumbnail URLs included, instead of bare PDF links
+    private static ResponseEntity<?> toListing(CertificateIndexPage page, String view) {
+        if ("gallery".equalsIgnoreCase(view)) {
+            return ResponseEntity.ok(page);
+        }
+        return toUrlList(page);
+    }
 
-        return ResponseEntity.ok(urls);
+    // The URL lists keep their plain-array body; the cursor for the next page travels in a header
+    private static ResponseEntity<List<String>> toUrlList(CertificateIndexPage page) {
+        List<String> urls = page.getItems().stream().map(CertificateIndexEntry::getUrl).toList();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", String.valueOf(page.getNextCursor()));
+        }
+        return response.body(urls);
     }
 }
@@ -1,12 +1,6 @@
 package com.example.demo.controller;
 
-import java.net.URI;
-
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -14,9 +8,12 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -28,11 +25,19 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.example.demo.Repository.CertificateRecordRepository;
 import com.example.demo.Repository.ExamRepository;
 import com.example.demo.Repository.UserExamRepository;
+import com.example.demo.Service.CertificateArchiveService;
+import com.example.demo.Service.CertificateIndexService;
 import com.example.demo.Service.ExamService;
+import com.example.demo.Service.ImageVariantService;
+import com.example.demo.Service.StoredObjectService;
+import com.example.demo.Service.UploadOutbox;
 import com.example.demo.dto.ExamResultDTO;
+import com.example.demo.model.CertificateRecord;
 import com.example.demo.model.Exam;
 import com.example.demo.model.UserExam;
 
@@ -50,14 +55,23 @@ public class ExamController {
     @Autowired
     private UserExamRepository userExamRepository;
 
-    @Value("${supabase.url}")
-    private String supabaseUrl;
+    @Autowired
+    private CertificateArchiveService certificateArchiveService;
+
+    @Autowired
+    private CertificateRecordRepository certificateRecordRepository;
+
+    @Autowired
+    private CertificateIndexService certificateIndexService;
 
-    @Value("${supabase.api-key}")
-    private String supabaseApiKey;
+    @Autowired
+    private ImageVariantService imageVariantService;
 
-    @Value("${supabase.bucket-name}")
-    private String bucketName;
+    @Autowired
+    private StoredObjectService storedObjectService;
+
+    @Autowired
+    private UploadOutbox uploadOutbox;
 
     // 🔵 Get all exams
     @GetMapping("/exams")
@@ -107,26 +121,11 @@ public class ExamController {
                 return ResponseEntity.badRequest().body("Invalid file type.");
             }
 
-            String fileName = UUID.randomUUID().toString() + "-" + file.getOriginalFilename();
-            String uploadUrl = supabaseUrl + "/storage/v1/object/" + bucketName + "/" + fileName;
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uploadUrl))
-                    .header("apikey", supabaseApiKey)
-                    .header("Authorization", "Bearer " + supabaseApiKey)
-                    .header("Content-Type", fileType)
-                    .PUT(HttpRequest.BodyPublishers.ofByteArray(file.getBytes()))
-                    .build();
-
-            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200 || response.statusCode() == 201) {
-                String imageUrl = supabaseUrl + "/storage/v1/object/public/" + bucketName + "/" + fileName;
-                return ResponseEntity.ok(Map.of("imageUrl", imageUrl));
-            } else {
-                return ResponseEntity.status(response.statusCode())
-                        .body(Map.of("error", "Upload failed: " + response.body()));
-            }
+            // Smaller copies follow in the background and are picked up when the exam is saved with this URL
+            return ResponseEntity.ok(Map.of("imageUrl", imageVariantService.upload(file, null)));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body(Map.of("error", "Upload failed: " + e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -165,25 +164,49 @@ public class ExamController {
     @GetMapping("/exam/{examId}")
     public ResponseEntity<List<ExamResultDTO>> getResultsByExam(@PathVariable UUID examId) {
         List<UserExam> userExams = userExamRepository.findByExamId(examId);
+        Map<Long, CertificateRecord> certificates = certificateRecordRepository.findByExamIdAndUserIdIn(examId,
+                        userExams.stream().map(ue -> ue.getUser().getId()).toList())
+                .stream().collect(Collectors.toMap(CertificateRecord::getUserId, record -> record));
 
         List<ExamResultDTO> results = userExams.stream().map(ue -> {
             String studentName = ue.getUser().getName();
             String examTitle = ue.getExam().getTitle();
-            String subject = ue.getExam().getSubject();
-
-            // Sanitize file path for Supabase
-            String safeStudentName = studentName.trim().replaceAll("[^a-zA-Z0-9_-]", "_");
-            String safeSubject = subject.trim().replaceAll("[^a-zA-Z0-9_-]", "_");
 
-            String filePath = "certificates/" + safeStudentName + "/" + safeSubject + ".pdf";
-            String certUrl = supabaseUrl + "/storage/v1/object/public/" + bucketName + "/" + filePath;
+            // Null until a certificate has been generated for this student
+            CertificateRecord certificate = certificates.get(ue.getUser().getId());
+            String certUrl = certificate != null ? certificateIndexService.urlFor(certificate) : null;
 
             return new ExamResultDTO(studentName, certUrl, ue.getPercentage(), examTitle);
         }).collect(Collectors.toList());
 
         return ResponseEntity.ok(results);
     }
+    // 🔵 Download every certificate of an exam as one ZIP or one merged PDF
+    @GetMapping("/exam/{examId}/certificates")
+    public ResponseEntity<StreamingResponseBody> downloadExamCertificates(
+            @PathVariable UUID examId,
+            @RequestParam(defaultValue = "zip") String format) {
+        if (examRepository.findById(examId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if ("pdf".equalsIgnoreCase(format)) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=certificates-" + examId + ".pdf")
+                    .body(out -> certificateArchiveService.writeMergedPdf(examId, out));
+        }
+        if (!"zip".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=certificates-" + examId + ".zip")
+                .body(out -> certificateArchiveService.writeZip(examId, out));
+    }
+
     @PostMapping("/{id}/pdf")
+    @Transactional // the PDF's outbox entry commits with the exam
     public ResponseEntity<String> uploadExamSyllabusPdf(
             @PathVariable UUID id,
             @RequestParam("file") MultipartFile file) {
@@ -192,38 +215,24 @@ public class ExamController {
                 .orElseThrow(() -> new RuntimeException("Exam not found"));
 
         try {
-            // Supabase config
-            String bucket = bucketName; // your bucket name
-            String projectUrl = supabaseUrl;
-            String apiKey = supabaseApiKey;
-
-            String originalFileName = URLEncoder.encode(file.getOriginalFilename(), StandardCharsets.UTF_8);
-            String fileName = "syllabus_" + id + "_" + originalFileName;
-            String uploadUrl = projectUrl + "/storage/v1/object/" + bucket + "/" + fileName;
-            String publicUrl = projectUrl + "/storage/v1/object/public/" + bucket + "/" + fileName;
-
-            // Upload PDF to Supabase Storage
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uploadUrl))
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", file.getContentType())
-                    .PUT(HttpRequest.BodyPublishers.ofByteArray(file.getBytes()))
-                    .build();
-
-            HttpClient httpClient = HttpClient.newHttpClient();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                // Save URL to DB
-                exam.setSyllabus(publicUrl);
-                examRepository.save(exam);
-                return ResponseEntity.ok("Uploaded successfully: " + publicUrl);
-            } else {
+            // Named after its content, so the same PDF uploaded for several exams is stored once
+            String publicUrl;
+            try {
+                publicUrl = storedObjectService.upload(file, "syllabus").url();
+            } catch (IOException e) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
                 return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                        .body("Upload failed: " + response.body());
+                        .body("Upload failed: " + e.getMessage());
             }
 
+            // Save URL to DB; it is served once the outbox has sent it
+            exam.setSyllabus(publicUrl);
+            exam.setSyllabusStatus(uploadOutbox.statusOf(publicUrl));
+            examRepository.save(exam);
+            return ResponseEntity.ok("Uploaded successfully: " + publicUrl);
+
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Exception: " + e.getMessage());
         }
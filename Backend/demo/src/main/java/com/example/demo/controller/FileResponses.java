@@ -0,0 +1,147 @@
+package com.example.demo.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Sends a file from local disk without copying it through the heap: Tomcat's
+ * sendfile(2) when the connector offers it, otherwise FileChannel.transferTo.
+ * Small bodies already in memory go out directly. Handles conditional
+ * requests on the ETag and single byte ranges.
+ */
+final class FileResponses {
+
+    private FileResponses() {
+    }
+
+    static void send(Path file, String contentType, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        send(file, true, contentType, etag, request, response);
+    }
+
+    /**
+     * Sends a cache file the caller keeps pinned only until this returns.
+     * Tomcat's sendfile reopens the file by name after the servlet is done,
+     * by which time it may have been evicted, so the copy happens here.
+     */
+    static void sendPinned(Path file, String contentType, String etag,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        send(file, false, contentType, etag, request, response);
+    }
+
+    private static void send(Path file, boolean sendfile, String contentType, String etag,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (notModified(etag, request, response)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            long[] span = span(channel.size(), contentType, etag, request, response);
+            if (span == null) {
+                return;
+            }
+            long start = span[0];
+            long end = span[1];
+
+            // Tomcat sends the file with sendfile(2) after we return; otherwise copy channel to channel
+            if (sendfile && Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+                request.setAttribute("org.apache.tomcat.sendfile.filename", file.toAbsolutePath().toString());
+                request.setAttribute("org.apache.tomcat.sendfile.start", start);
+                request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position <= end; ) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        }
+    }
+
+    static void send(byte[] body, String contentType, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (notModified(etag, request, response)) {
+            return;
+        }
+        long[] span = span(body.length, contentType, etag, request, response);
+        if (span != null) {
+            response.getOutputStream().write(body, (int) span[0], (int) (span[1] - span[0] + 1));
+        }
+    }
+
+    private static boolean notModified(String etag, HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets status and entity headers for a body of {@code length} bytes and
+     * returns the first and last byte to send, or {@code null} when there is
+     * no body to write (HEAD, empty, or an unsatisfiable range).
+     */
+    private static long[] span(long length, String contentType, String etag,
+                               HttpServletRequest request, HttpServletResponse response) {
+        long start = 0;
+        long end = length - 1;
+
+        HttpRange range = requestedRange(request, etag);
+        if (range != null) {
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                start = length; // unsatisfiable, answered below
+            }
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return null;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        long count = end - start + 1;
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return null;
+        }
+        return new long[] {start, end};
+    }
+
+    // Multiple ranges, unparseable headers and a stale If-Range all get the whole file, as RFC 9110 allows
+    private static HttpRange requestedRange(HttpServletRequest request, String etag) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.controller;
+
+import com.example.demo.Service.ObjectCache;
+import com.example.demo.Service.SupabaseObjectStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Downloads of stored objects through this server's {@link ObjectCache}
+ * instead of straight from storage. Supports ETag revalidation and byte
+ * ranges. Point {@code storage.public-base-url} here to hand out these URLs.
+ */
+@RestController
+@RequestMapping(ObjectProxyController.BASE_PATH)
+@ConditionalOnProperty(name = "storage.proxy.enabled", havingValue = "true")
+public class ObjectProxyController {
+
+    static final String BASE_PATH = "/api/objects";
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    @GetMapping("/**")
+    public void download(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String prefix = request.getContextPath() + BASE_PATH + "/";
+        String uri = request.getRequestURI();
+        String objectPath = uri.startsWith(prefix)
+                ? UriUtils.decode(uri.substring(prefix.length()), StandardCharsets.UTF_8)
+                : null;
+        if (!isValid(objectPath)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        ObjectCache.CachedObject object;
+        try {
+            object = objectCache.get(objectPath);
+        } catch (SupabaseObjectStorage.StorageUnavailableException e) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage());
+            return;
+        } catch (IOException e) {
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "Could not fetch " + objectPath + ": " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        if (object == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        String contentType = MediaTypeFactory.getMediaType(objectPath)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+        // The file is pinned until the response is written, so it is sent without sendfile
+        try (object) {
+            if (object.bytes() != null) {
+                FileResponses.send(object.bytes(), contentType, object.etag(), request, response);
+            } else {
+                FileResponses.sendPinned(object.file(), contentType, object.etag(), request, response);
+            }
+        }
+    }
+
+    // Same rules as object names in local storage: relative, no empty or dot segments
+    private static boolean isValid(String objectPath) {
+        if (objectPath == null || objectPath.isEmpty() || objectPath.indexOf('\\') >= 0) {
+            return false;
+        }
+        for (String segment : objectPath.split("/", -1)) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.controller;
+
+import com.example.demo.Service.LocalObjectStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Public downloads for the local storage backend; the URLs come from
+ * {@link LocalObjectStorage#publicUrl}. Supports ETag revalidation and
+ * byte ranges, so large files can be resumed or seeked.
+ */
+@RestController
+@RequestMapping(StorageController.BASE_PATH)
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class StorageController {
+
+    static final String BASE_PATH = "/api/storage";
+
+    @Autowired
+    private LocalObjectStorage storage;
+
+    @GetMapping("/**")
+    public void download(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String prefix = request.getContextPath() + BASE_PATH + "/";
+        String uri = request.getRequestURI();
+        Path file = uri.startsWith(prefix)
+                ? storage.file(UriUtils.decode(uri.substring(prefix.length()), StandardCharsets.UTF_8))
+                : null;
+        if (file == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // Objects are replaced by moving a new file into place, so size and mtime change together with the content
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String etag = "\"" + Long.toHexString(attributes.size()) + "-"
+                + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+        String contentType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+        FileResponses.send(file, contentType, etag, request, response);
+    }
+}
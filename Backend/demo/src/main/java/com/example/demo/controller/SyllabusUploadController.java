@@ -0,0 +1,128 @@
+package com.example.demo.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.Service.ChunkedUploadService;
+import com.example.demo.dto.UploadSessionRequest;
+import com.example.demo.model.UploadSession;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Resumable alternative to POST /api/{id}/pdf for large syllabus PDFs:
+ * create a session, PUT its chunks (raw bytes, optionally with an
+ * X-Chunk-SHA256 header), GET the session to see what is still missing
+ * after a dropped connection, then commit.
+ */
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "*")
+public class SyllabusUploadController {
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    // 🔵 Start a resumable upload
+    @PostMapping("/{id}/pdf/uploads")
+    public ResponseEntity<?> createUpload(@PathVariable UUID id, @RequestBody UploadSessionRequest request) {
+        try {
+            UploadSession session = chunkedUploadService.create(id, request);
+            return ResponseEntity.created(URI.create("/api/" + id + "/pdf/uploads/" + session.getId()))
+                    .body(chunkedUploadService.status(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Exception: " + e.getMessage());
+        }
+    }
+
+    // 🔵 Chunks received so far and the ones still missing
+    @GetMapping("/{id}/pdf/uploads/{uploadId}")
+    public ResponseEntity<?> getUpload(@PathVariable UUID id, @PathVariable UUID uploadId) {
+        Optional<UploadSession> session = chunkedUploadService.find(id, uploadId);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(chunkedUploadService.status(session.get()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Exception: " + e.getMessage());
+        }
+    }
+
+    // 🟠 Store one chunk; sending it again replaces it
+    @PutMapping("/{id}/pdf/uploads/{uploadId}/chunks/{index}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable UUID id,
+            @PathVariable UUID uploadId,
+            @PathVariable int index,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String sha256,
+            HttpServletRequest request) {
+        Optional<UploadSession> session = chunkedUploadService.find(id, uploadId);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(chunkedUploadService.putChunk(session.get(), index, request.getInputStream(), sha256));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Exception: " + e.getMessage());
+        }
+    }
+
+    // 🟢 Join the chunks and attach the PDF to the exam
+    @PostMapping("/{id}/pdf/uploads/{uploadId}/commit")
+    public ResponseEntity<?> commitUpload(@PathVariable UUID id, @PathVariable UUID uploadId) {
+        Optional<UploadSession> session = chunkedUploadService.find(id, uploadId);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            ChunkedUploadService.Committed committed = chunkedUploadService.commit(session.get());
+            return ResponseEntity.ok(Map.of("url", committed.url(), "status", committed.status()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Upload failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    // 🔴 Abandon an upload and drop its chunks
+    @DeleteMapping("/{id}/pdf/uploads/{uploadId}")
+    public ResponseEntity<Void> deleteUpload(@PathVariable UUID id, @PathVariable UUID uploadId) {
+        Optional<UploadSession> session = chunkedUploadService.find(id, uploadId);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        chunkedUploadService.abort(session.get());
+        return ResponseEntity.noContent().build();
+    }
+}
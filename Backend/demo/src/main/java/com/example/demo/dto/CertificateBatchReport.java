@@ -0,0 +1,46 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class CertificateBatchReport {
+    private String status; // "success", "partial" or "error" - same field the frontend already checks
+    private String message;
+    private int total;
+    private int succeeded;
+    private int failed;
+    private int skipped;
+    private long elapsedMillis;
+    private long totalBytes; // sum of the PDFs rendered by this batch
+    private List<CertificateResult> results;
+
+    public static CertificateBatchReport of(List<CertificateResult> results, long elapsedMillis) {
+        CertificateBatchReport report = new CertificateBatchReport();
+        report.setResults(results);
+        report.setTotal(results.size());
+        report.setElapsedMillis(elapsedMillis);
+        for (CertificateResult result : results) {
+            switch (result.getStatus()) {
+                case SUCCEEDED -> report.succeeded++;
+                case FAILED -> report.failed++;
+                case SKIPPED -> report.skipped++;
+            }
+            if (result.getSizeBytes() != null) {
+                report.totalBytes += result.getSizeBytes();
+            }
+        }
+
+        if (report.failed == 0) {
+            report.setStatus("success");
+        } else if (report.succeeded > 0 || report.skipped > 0) {
+            report.setStatus("partial");
+        } else {
+            report.setStatus("error");
+        }
+        report.setMessage("Generated and uploaded " + report.succeeded + " of " + report.total
+                + " certificates (" + report.failed + " failed, " + report.skipped + " skipped)");
+        return report;
+    }
+}
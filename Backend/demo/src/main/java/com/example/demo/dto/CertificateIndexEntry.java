@@ -0,0 +1,21 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class CertificateIndexEntry {
+    private Long id; // also the keyset cursor
+    private Long userId;
+    private UUID examId;
+    private String studentName;
+    private String subject;
+    private String templateName;
+    private String objectPath;
+    private String url; // public storage URL, or the on-demand download endpoint if not stored yet
+    private String thumbnailUrl; // PNG preview for gallery views, same fallback
+    private boolean stored;
+    private LocalDateTime generatedAt;
+}
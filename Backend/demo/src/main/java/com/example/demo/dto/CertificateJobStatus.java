@@ -0,0 +1,22 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class CertificateJobStatus {
+    private UUID jobId;
+    private String status;
+    private int total;
+    private int succeeded;
+    private int failed;
+    private int skipped;
+    private int pending;
+    private double throughputPerSecond; // over the current run
+    private Long etaSeconds; // null until the first item of the run completes
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
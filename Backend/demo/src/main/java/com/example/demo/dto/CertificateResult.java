@@ -0,0 +1,44 @@
+package com.example.demo.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CertificateResult {
+
+    public enum Status { SUCCEEDED, FAILED, SKIPPED }
+
+    private int index; // position of the request in the submitted batch
+    private Long userId;
+    private UUID examId;
+    private Status status;
+    private String message; // failure or skip reason, null on success
+    private Long sizeBytes; // size of the uploaded PDF, null if nothing was rendered
+    private boolean permanent; // failed for a reason a retry cannot fix, e.g. an unknown user or template
+
+    public static CertificateResult succeeded(int index, CertificateRequest cert) {
+        return succeeded(index, cert, null);
+    }
+
+    public static CertificateResult succeeded(int index, CertificateRequest cert, Long sizeBytes) {
+        return new CertificateResult(index, cert.getUserId(), cert.getExamId(), Status.SUCCEEDED, null, sizeBytes, false);
+    }
+
+    public static CertificateResult failed(int index, CertificateRequest cert, String reason) {
+        return new CertificateResult(index, cert.getUserId(), cert.getExamId(), Status.FAILED, reason, null, false);
+    }
+
+    /** A failure caused by the request itself, which the job queue does not retry. */
+    public static CertificateResult rejected(int index, CertificateRequest cert, String reason) {
+        return new CertificateResult(index, cert.getUserId(), cert.getExamId(), Status.FAILED, reason, null, true);
+    }
+
+    public static CertificateResult skipped(int index, CertificateRequest cert, String reason) {
+        return new CertificateResult(index, cert.getUserId(), cert.getExamId(), Status.SKIPPED, reason, null, false);
+    }
+}
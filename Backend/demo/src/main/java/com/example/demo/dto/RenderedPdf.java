@@ -0,0 +1,11 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class RenderedPdf {
+    private byte[] content;
+    private String etag; // strong validator, already quoted
+}
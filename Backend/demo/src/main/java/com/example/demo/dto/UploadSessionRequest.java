@@ -0,0 +1,12 @@
+package com.example.demo.dto;
+
+import lombok.Data;
+
+@Data
+public class UploadSessionRequest {
+    private String fileName;
+    private String contentType;
+    private Long size;
+    private Long chunkSize; // server default when missing
+    private String sha256; // of the whole file, optional
+}
@@ -0,0 +1,30 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class UploadSessionStatus {
+
+    @Data
+    public static class Chunk {
+        private int index;
+        private long offset;
+        private long size;
+        private String sha256;
+    }
+
+    private UUID uploadId;
+    private UUID examId;
+    private String fileName;
+    private long size;
+    private long chunkSize;
+    private int chunkCount;
+    private long receivedBytes;
+    private List<Chunk> received;
+    private List<Integer> missing; // chunk indexes still to PUT
+    private LocalDateTime expiresAt;
+}
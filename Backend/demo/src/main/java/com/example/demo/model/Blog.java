@@ -2,14 +2,23 @@ package com.example.demo.model;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+
+import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
 import lombok.Data;
 
 @Entity
@@ -33,6 +42,17 @@ public class Blog {
     private List<String> tags;
 
     private String imageUrl;
+
+    // Resized copies of imageUrl keyed by width, filled in by ImageVariantService
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "blog_image_variants", joinColumns = @JoinColumn(name = "blog_id"))
+    @MapKeyColumn(name = "width")
+    @Column(name = "url", length = 1024)
+    @Fetch(FetchMode.SUBSELECT)
+    private Map<Integer, String> imageVariants = new TreeMap<>();
+
+    // PENDING while imageUrl is still on its way to storage, then AVAILABLE (or FAILED)
+    private String imageStatus;
     private Boolean featured;
     private String readTime;
 
@@ -0,0 +1,37 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+@Entity
+@Data
+@Table(name = "certificate_jobs")
+public class CertificateJob {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    private String status;
+
+    private int total;
+
+    private Boolean force; // regenerate even when the stored fingerprint matches
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt; // start of the current run, reset when a restarted node resumes the job
+    private LocalDateTime finishedAt;
+
+    private int doneAtStart; // items already finished when the current run started, used for throughput
+}
@@ -0,0 +1,49 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+@Entity
+@Data
+@Table(name = "certificate_job_items", indexes = {
+        @Index(name = "idx_certificate_job_items_job_status", columnList = "jobId, status"),
+        @Index(name = "idx_certificate_job_items_claim", columnList = "status, id")
+})
+public class CertificateJobItem {
+
+    public static final String PENDING = "PENDING";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private UUID jobId;
+    private int itemIndex;
+
+    // Copy of the submitted CertificateRequest
+    private Long userId;
+    private UUID examId;
+    private String percentage;
+    private String subject;
+    private String templateName;
+
+    private String status; // PENDING or a CertificateResult.Status name
+
+    @Column(length = 1000)
+    private String message;
+
+    // Work queue bookkeeping, see CertificateQueueWorker
+    private Integer attempts;
+    private String leasedBy; // worker currently rendering the item
+    private LocalDateTime leaseExpiresAt; // renewed by the worker's heartbeat; anyone may claim it after this
+    private LocalDateTime nextAttemptAt; // retry backoff after a failed attempt
+}
@@ -0,0 +1,80 @@
+package com.example.demo.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+/**
+ * One row per certificate that has been generated, or in lazy mode merely
+ * recorded, together with the inputs needed to render it on demand. Also the
+ * index behind the certificate listing endpoints; every listing index ends
+ * in id so pages can be walked by keyset.
+ */
+@Entity
+@Data
+@Table(name = "certificate_records", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_certificate_records_user_exam", columnNames = {"user_id", "exam_id"})
+}, indexes = {
+        @Index(name = "idx_certificate_records_exam", columnList = "exam_id, id"),
+        @Index(name = "idx_certificate_records_student_key", columnList = "student_key, id"),
+        @Index(name = "idx_certificate_records_subject_key", columnList = "subject_key, id"),
+        @Index(name = "idx_certificate_records_generated", columnList = "generated_at, id")
+})
+public class CertificateRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "exam_id", nullable = false)
+    private UUID examId;
+
+    private String templateName;
+
+    @Column(name = "student_name")
+    private String studentName;
+
+    @Column(name = "subject")
+    private String subject;
+
+    // Name and subject as they appear in objectPath; the index filters on these
+    @Column(name = "student_key")
+    private String studentKey;
+
+    @Column(name = "subject_key")
+    private String subjectKey;
+
+    private String percentage; // as printed on the certificate
+
+    private String objectPath; // path inside the storage bucket
+
+    @Column(name = "thumbnail_path")
+    private String thumbnailPath; // PNG next to the PDF, null if none was stored
+
+    // False until the PDF has been uploaded to objectPath; null on rows from before lazy mode (uploaded)
+    private Boolean stored;
+
+    // SHA-256 of everything printed on the certificate; unchanged input means no re-render
+    @Column(length = 64)
+    private String fingerprint;
+
+    @Column(name = "generated_at")
+    private LocalDateTime generatedAt;
+
+    // Date printed on the certificate; not part of the fingerprint, so re-sending an unchanged row keeps it
+    @Column(name = "issue_date")
+    private LocalDate issueDate;
+}
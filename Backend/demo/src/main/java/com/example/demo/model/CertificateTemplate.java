@@ -1,9 +1,18 @@
 package com.example.demo.model;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
 import jakarta.persistence.Table;
 import lombok.Data;
 
@@ -12,6 +21,9 @@ import lombok.Data;
 @Table(name = "certificate_templates")
 public class CertificateTemplate {
 
+    public static final String ENGINE_HTML = "html";
+    public static final String ENGINE_STAMP = "stamp";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)  // <- Add this
     private Long id;
@@ -22,4 +34,19 @@ public class CertificateTemplate {
 
     private String filePath;
 
+    // "html" renders every certificate from the template, "stamp" draws values onto a cached background
+    private String renderEngine;
+
+    // Thymeleaf source uploaded at runtime; null for the templates bundled on the classpath
+    @Column(columnDefinition = "TEXT")
+    private String html;
+
+    // Images, CSS and fonts the template references as asset:<name>
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "certificate_template_assets", joinColumns = @JoinColumn(name = "template_id"))
+    private List<CertificateTemplateAsset> assets = new ArrayList<>();
+
+    // Bumped on every upload; other nodes recompile when it changes
+    private LocalDateTime updatedAt;
+
 }
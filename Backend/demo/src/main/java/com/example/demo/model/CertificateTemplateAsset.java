@@ -0,0 +1,24 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CertificateTemplateAsset {
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "content", nullable = false)
+    private byte[] content;
+
+}
@@ -6,8 +6,13 @@ import lombok.Data;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 
@@ -40,6 +45,19 @@ public class Exam {
 
     private String image;
 
+    // Resized copies of image keyed by width, filled in by ImageVariantService
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "exam_image_variants", joinColumns = @JoinColumn(name = "exam_id"))
+    @MapKeyColumn(name = "width")
+    @Column(name = "url", length = 1024)
+    @Fetch(FetchMode.SUBSELECT)
+    private Map<Integer, String> imageVariants = new TreeMap<>();
+
+    // PENDING while image / syllabus are still on their way to storage, then AVAILABLE (or FAILED)
+    private String imageStatus;
+
+    private String syllabusStatus;
+
     @OneToMany(mappedBy = "exam", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonManagedReference
     @JsonIgnore 
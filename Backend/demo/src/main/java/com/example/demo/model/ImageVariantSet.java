@@ -0,0 +1,38 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Resized copies of one uploaded image, looked up by the original's URL when
+ * an exam or blog post is saved with it.
+ */
+@Entity
+@Data
+@Table(name = "image_variant_sets")
+public class ImageVariantSet {
+
+    @Id
+    @Column(length = 1024)
+    private String sourceUrl;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "image_variant_set_urls", joinColumns = @JoinColumn(name = "source_url"))
+    @MapKeyColumn(name = "width")
+    @Column(name = "url", length = 1024)
+    private Map<Integer, String> variants = new TreeMap<>();
+
+    private LocalDateTime createdAt;
+}
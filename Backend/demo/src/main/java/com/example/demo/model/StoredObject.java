@@ -0,0 +1,30 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/** An uploaded object, keyed by the SHA-256 of its content so identical uploads share it. */
+@Entity
+@Data
+@Table(name = "stored_objects")
+public class StoredObject {
+
+    // Lowercase hex
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(length = 1024, nullable = false)
+    private String objectPath;
+
+    private String contentType;
+
+    private Long size;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,65 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * An upload accepted into the local spool and waiting to be sent to object
+ * storage by the node that spooled it.
+ */
+@Entity
+@Data
+@Table(name = "upload_outbox", indexes = {
+        @Index(name = "idx_upload_outbox_dispatch", columnList = "node, status, id"),
+        @Index(name = "idx_upload_outbox_url", columnList = "url"),
+        @Index(name = "idx_upload_outbox_path", columnList = "object_path, id")
+})
+public class UploadOutboxEntry {
+
+    public static final String PENDING = "PENDING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Only this node has the spool file
+    private String node;
+
+    @Column(length = 1024, nullable = false)
+    private String objectPath;
+
+    // Public URL, as stored on the entities waiting for it
+    @Column(length = 1024)
+    private String url;
+
+    private String contentType;
+
+    @Column(length = 1024)
+    private String spoolFile;
+
+    private Long size;
+
+    @Column(length = 64)
+    private String sha256;
+
+    private String status;
+
+    private Integer attempts;
+
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,45 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * A resumable upload of an exam syllabus. The chunks received so far are
+ * kept on the disk of the node that created the session.
+ */
+@Entity
+@Data
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    private UUID examId;
+
+    // Only this node has the chunks
+    private String node;
+
+    private String fileName;
+
+    private String contentType;
+
+    private long size;
+
+    private long chunkSize;
+
+    @Column(length = 64)
+    private String sha256; // of the whole file, checked on commit when the client sent one
+
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+}
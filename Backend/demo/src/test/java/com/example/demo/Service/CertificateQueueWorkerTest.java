@@ -0,0 +1,193 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.demo.Repository.CertificateJobRepository;
+import com.example.demo.dto.CertificateRequest;
+import com.example.demo.dto.CertificateResult;
+import com.example.demo.model.CertificateJob;
+
+/**
+ * Retry decisions of the certificate queue worker against mocks, and the
+ * claim query itself against a real PostgreSQL when
+ * CERTIFICATE_QUEUE_TEST_DB holds a JDBC URL (user and password included)
+ * of a database the test may create a scratch schema in.
+ */
+class CertificateQueueWorkerTest {
+
+    private static final UUID JOB = UUID.randomUUID();
+
+    @Test
+    void rejectedItemsFailWithoutRetry() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        CertificateJobRepository jobRepository = mock(CertificateJobRepository.class);
+        CertificateTemplateService certificateService = mock(CertificateTemplateService.class);
+
+        CertificateQueueWorker worker = new CertificateQueueWorker();
+        ReflectionTestUtils.setField(worker, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(worker, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(worker, "certificateService", certificateService);
+        ReflectionTestUtils.setField(worker, "batchSize", 10);
+        ReflectionTestUtils.setField(worker, "leaseSeconds", 60);
+        ReflectionTestUtils.setField(worker, "maxAttempts", 5);
+        ReflectionTestUtils.setField(worker, "retryBaseSeconds", 10L);
+        ReflectionTestUtils.setField(worker, "retryMaxSeconds", 600L);
+
+        // Two claimed items on their first attempt
+        when(jdbcTemplate.query(eq(CertificateQueueWorker.CLAIM_ITEMS), any(RowMapper.class), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    RowMapper<?> mapper = invocation.getArgument(1);
+                    List<Object> items = new ArrayList<>();
+                    for (long id = 1; id <= 2; id++) {
+                        items.add(mapper.mapRow(claimedRow(id), (int) id - 1));
+                    }
+                    return items;
+                });
+        CertificateJob job = new CertificateJob();
+        job.setId(JOB);
+        when(jobRepository.findById(JOB)).thenReturn(Optional.of(job));
+        when(certificateService.processCertificates(anyList(), anyBoolean(), any())).thenAnswer(invocation -> {
+            List<CertificateRequest> requests = invocation.getArgument(0);
+            Consumer<CertificateResult> onResult = invocation.getArgument(2);
+            onResult.accept(CertificateResult.rejected(0, requests.get(0), "User not found with ID: 1"));
+            onResult.accept(CertificateResult.failed(1, requests.get(1), "Storage answered 503"));
+            // Items are finished once the batch, and with it the certificate records, is done
+            verify(jdbcTemplate, never()).update(startsWith("UPDATE certificate_job_items"),
+                    any(), any(), any(), any());
+            return null;
+        });
+
+        assertEquals(2, worker.runOnce());
+
+        verify(jdbcTemplate).update(startsWith("UPDATE certificate_job_items SET status"),
+                eq("FAILED"), eq("User not found with ID: 1"), eq(1L), anyString());
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE certificate_job_items SET message"),
+                anyString(), anyLong(), eq(1L), anyString());
+        verify(jdbcTemplate).update(startsWith("UPDATE certificate_job_items SET message"),
+                eq("Storage answered 503"), anyLong(), eq(2L), anyString());
+    }
+
+    private static ResultSet claimedRow(long id) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(id);
+        when(rs.getObject("job_id", UUID.class)).thenReturn(JOB);
+        when(rs.getObject("user_id", Long.class)).thenReturn(id);
+        when(rs.getObject("exam_id", UUID.class)).thenReturn(UUID.randomUUID());
+        when(rs.getString("template_name")).thenReturn("template1");
+        when(rs.getInt("attempts")).thenReturn(1);
+        return rs;
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "CERTIFICATE_QUEUE_TEST_DB", matches = ".+")
+    void claimsSkipLockedAndLeasedItems() throws SQLException {
+        String url = System.getenv("CERTIFICATE_QUEUE_TEST_DB");
+        String schema = "queue_test_" + UUID.randomUUID().toString().replace("-", "");
+        try (Connection admin = DriverManager.getConnection(url)) {
+            try (Statement statement = admin.createStatement()) {
+                statement.execute("CREATE SCHEMA " + schema);
+                statement.execute("SET search_path TO " + schema);
+                statement.execute("CREATE TABLE certificate_job_items (id bigserial PRIMARY KEY, job_id uuid, "
+                        + "user_id bigint, exam_id uuid, percentage varchar(255), subject varchar(255), "
+                        + "template_name varchar(255), status varchar(255), attempts integer, leased_by varchar(255), "
+                        + "lease_expires_at timestamp, next_attempt_at timestamp)");
+                for (int i = 0; i < 6; i++) {
+                    statement.execute("INSERT INTO certificate_job_items (job_id, user_id, status) "
+                            + "VALUES ('" + JOB + "', " + i + ", 'PENDING')");
+                }
+                // Done, backing off, and leased by a live worker: none of these may be claimed
+                statement.execute("INSERT INTO certificate_job_items (job_id, user_id, status) VALUES ('" + JOB + "', 90, 'SUCCEEDED')");
+                statement.execute("INSERT INTO certificate_job_items (job_id, user_id, status, next_attempt_at) "
+                        + "VALUES ('" + JOB + "', 91, 'PENDING', localtimestamp + interval '1 hour')");
+                statement.execute("INSERT INTO certificate_job_items (job_id, user_id, status, leased_by, lease_expires_at, attempts) "
+                        + "VALUES ('" + JOB + "', 92, 'PENDING', 'other', localtimestamp + interval '1 hour', 1)");
+                // A lease that ran out: claimable again, and the attempt is counted
+                statement.execute("INSERT INTO certificate_job_items (job_id, user_id, status, leased_by, lease_expires_at, attempts) "
+                        + "VALUES ('" + JOB + "', 93, 'PENDING', 'crashed', localtimestamp - interval '1 second', 1)");
+            }
+
+            try (Connection first = open(url, schema); Connection second = open(url, schema)) {
+                // The first claim keeps its row locks until it commits, as it would mid-statement on a busy node
+                Set<Long> claimedByFirst = claim(first, "a", 4);
+                Set<Long> claimedBySecond = claim(second, "b", 10);
+                first.commit();
+                second.commit();
+
+                assertEquals(4, claimedByFirst.size());
+                assertEquals(3, claimedBySecond.size());
+                Set<Long> users = new HashSet<>(claimedByFirst);
+                users.addAll(claimedBySecond);
+                assertEquals(Set.of(0L, 1L, 2L, 3L, 4L, 5L, 93L), users);
+
+                try (Statement statement = admin.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT attempts FROM certificate_job_items WHERE user_id = 93")) {
+                    assertTrue(rs.next());
+                    assertEquals(2, rs.getInt(1));
+                }
+                assertTrue(claim(second, "c", 10).isEmpty());
+                second.commit();
+            } finally {
+                try (Statement statement = admin.createStatement()) {
+                    statement.execute("DROP SCHEMA " + schema + " CASCADE");
+                }
+            }
+        }
+    }
+
+    private static Connection open(String url, String schema) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET search_path TO " + schema);
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    // Runs the worker's claim statement and returns the user ids of the claimed items
+    private static Set<Long> claim(Connection connection, String workerId, int limit) throws SQLException {
+        Set<Long> users = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(CertificateQueueWorker.CLAIM_ITEMS)) {
+            statement.setString(1, workerId);
+            statement.setInt(2, 60);
+            statement.setInt(3, limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    users.add(rs.getLong("user_id"));
+                }
+            }
+        }
+        return users;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import com.example.demo.Repository.CertificateTemplateRepository;
+import com.example.demo.model.CertificateTemplate;
+import com.openhtmltopdf.extend.FSStream;
+
+/**
+ * Renders the sample certificate of every bundled template with the
+ * compact output profile and fails the build if one exceeds
+ * certificate.output.size-budget-bytes. Needs no database or network:
+ * remote images in the templates are answered with local PNGs.
+ */
+class CertificateSizeBudgetTest {
+
+    private static CertificateTemplateService service;
+    private static long budget;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = CertificateSizeBudgetTest.class.getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        }
+        budget = Long.parseLong(properties.getProperty("certificate.output.size-budget-bytes", "0"));
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        RenderResourceCache resourceCache = new LocalImages();
+        ReflectionTestUtils.setField(resourceCache, "maxBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(resourceCache, "failureTtlSeconds", 300L);
+        ReflectionTestUtils.setField(resourceCache, "outputProfile", "compact");
+        ReflectionTestUtils.setField(resourceCache, "maxImagePx", 1200);
+
+        // No uploaded templates: the registry only ever answers with the bundled ones
+        CertificateTemplateRegistry templateRegistry = new CertificateTemplateRegistry();
+        ReflectionTestUtils.setField(templateRegistry, "certificateTemplateRepository",
+                Mockito.mock(CertificateTemplateRepository.class));
+        ReflectionTestUtils.setField(templateRegistry, "resourceCache", resourceCache);
+
+        service = new CertificateTemplateService(1, templateEngine, null);
+        ReflectionTestUtils.setField(service, "resourceCache", resourceCache);
+        ReflectionTestUtils.setField(service, "stampingRenderer", new StampingCertificateRenderer());
+        ReflectionTestUtils.setField(service, "pdfCompactor", new PdfCompactor());
+        ReflectionTestUtils.setField(service, "templateRegistry", templateRegistry);
+        ReflectionTestUtils.setField(service, "outputProfile", "compact");
+    }
+
+    @Test
+    void bundledTemplatesStayWithinSizeBudget() throws IOException {
+        for (String template : CertificateTemplateRegistry.BUILT_IN) {
+            for (String engine : new String[] {CertificateTemplate.ENGINE_HTML, CertificateTemplate.ENGINE_STAMP}) {
+                long size = service.sampleSize(template, engine);
+                assertTrue(budget <= 0 || size <= budget,
+                        template + " rendered with " + engine + " is " + size + " bytes, budget is " + budget);
+            }
+        }
+    }
+
+    /**
+     * Serves every http(s) image as a PNG of the size named in the URL
+     * (placeholder URLs such as {@code /120x120?text=Logo}), passed through
+     * the same compact-profile scaling as downloaded images.
+     */
+    private static class LocalImages extends RenderResourceCache {
+
+        private static final Pattern SIZE = Pattern.compile("(\\d+)x(\\d+)");
+
+        @Override
+        public FSStream getUrl(String url) {
+            Matcher size = SIZE.matcher(url);
+            boolean named = size.find();
+            int width = named ? Integer.parseInt(size.group(1)) : 100;
+            int height = named ? Integer.parseInt(size.group(2)) : 100;
+            byte[] png = optimizeImage(url, "image/png", png(width, height));
+            return new FSStream() {
+                @Override
+                public InputStream getStream() {
+                    return new ByteArrayInputStream(png);
+                }
+
+                @Override
+                public Reader getReader() {
+                    return new InputStreamReader(getStream(), StandardCharsets.ISO_8859_1);
+                }
+            };
+        }
+
+        private static byte[] png(int width, int height) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setPaint(new GradientPaint(0, 0, Color.LIGHT_GRAY, width, height, Color.DARK_GRAY));
+            graphics.fillRect(0, 0, width, height);
+            graphics.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                ImageIO.write(image, "png", out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.Repository.ExamRepository;
+import com.example.demo.Repository.UploadSessionRepository;
+import com.example.demo.dto.UploadSessionRequest;
+import com.example.demo.model.Exam;
+import com.example.demo.model.UploadSession;
+
+/**
+ * Resumable uploads against mocked repositories and a real chunk directory:
+ * commits hand over the joined file with its hash, concurrent PUTs of one
+ * chunk leave exactly one copy, and expired sessions are purged.
+ */
+class ChunkedUploadServiceTest {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final UUID EXAM = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    private final UploadSessionRepository sessionRepository = mock(UploadSessionRepository.class);
+    private final ExamRepository examRepository = mock(ExamRepository.class);
+    private final StoredObjectService storedObjectService = mock(StoredObjectService.class);
+    private final UploadOutbox uploadOutbox = mock(UploadOutbox.class);
+    private final Exam exam = new Exam();
+    private ChunkedUploadService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(examRepository.existsById(EXAM)).thenReturn(true);
+        when(examRepository.findById(EXAM)).thenReturn(Optional.of(exam));
+        when(sessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            UploadSession session = invocation.getArgument(0);
+            session.setId(UUID.randomUUID());
+            return session;
+        });
+        when(uploadOutbox.statusOf(anyString())).thenReturn("PENDING");
+        service = service("node-a", dir.toString());
+        service.open();
+    }
+
+    @Test
+    void commitHandsOverTheJoinedFileAndItsHash() throws Exception {
+        byte[] content = random(2 * CHUNK + 100, 1);
+        UploadSession session = create(content.length, sha256(content));
+        for (int index : new int[] {2, 0, 1}) {
+            put(session, index, content);
+        }
+
+        byte[][] handedOver = new byte[1][];
+        when(storedObjectService.upload(eq("syllabus"), eq("syllabus.pdf"), eq("application/pdf"),
+                any(Path.class), eq(sha256(content)))).thenAnswer(invocation -> {
+                    handedOver[0] = Files.readAllBytes(invocation.<Path>getArgument(3));
+                    return new StoredObjectService.Stored("syllabus/x.pdf", "https://cdn/syllabus/x.pdf", false);
+                });
+
+        ChunkedUploadService.Committed committed = service.commit(session);
+
+        assertArrayEquals(content, handedOver[0]);
+        assertEquals("https://cdn/syllabus/x.pdf", committed.url());
+        assertEquals("PENDING", committed.status());
+        assertEquals("https://cdn/syllabus/x.pdf", exam.getSyllabus());
+        verify(sessionRepository).delete(session);
+        assertFalse(Files.exists(dir.resolve(session.getId().toString())), "chunks go once the commit is done");
+    }
+
+    @Test
+    void checksumMismatchKeepsTheChunks() throws Exception {
+        byte[] content = random(CHUNK + 1, 2);
+        UploadSession session = create(content.length, "0".repeat(64));
+        put(session, 0, content);
+        put(session, 1, content);
+
+        assertThrows(IllegalArgumentException.class, () -> service.commit(session));
+
+        verify(storedObjectService, never()).upload(anyString(), anyString(), anyString(), any(Path.class), anyString());
+        assertEquals(2, service.status(session).getReceived().size());
+    }
+
+    @Test
+    void concurrentPutsOfOneChunkKeepOneCopy() throws Exception {
+        UploadSession session = create(CHUNK, null);
+        int writers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try {
+            for (int round = 0; round < 20; round++) {
+                CyclicBarrier start = new CyclicBarrier(writers);
+                List<Future<?>> puts = new ArrayList<>();
+                for (int writer = 0; writer < writers; writer++) {
+                    byte[] body = random(CHUNK, round * writers + writer);
+                    puts.add(pool.submit(() -> {
+                        start.await();
+                        return service.putChunk(session, 0, new ByteArrayInputStream(body), null);
+                    }));
+                }
+                for (Future<?> put : puts) {
+                    put.get();
+                }
+                assertEquals(1, service.status(session).getReceived().size(), "round " + round);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void purgeDropsExpiredSessionsOfEveryNode() throws Exception {
+        UploadSession mine = create(CHUNK, null);
+        UploadSession elsewhere = new UploadSession();
+        elsewhere.setId(UUID.randomUUID());
+        elsewhere.setNode("node-gone");
+        when(sessionRepository.findByExpiresAtBefore(any(LocalDateTime.class))).thenReturn(List.of(mine, elsewhere));
+
+        service.purgeExpired();
+
+        verify(sessionRepository).delete(mine);
+        verify(sessionRepository).delete(elsewhere);
+        assertFalse(Files.exists(dir.resolve(mine.getId().toString())));
+    }
+
+    @Test
+    void generatedNodeIdSurvivesARestart() throws Exception {
+        Path unconfigured = dir.resolve("unconfigured");
+        ChunkedUploadService first = service("", unconfigured.toString());
+        first.open();
+        first.shutdown();
+        String node = Files.readString(unconfigured.resolve("node-id"));
+
+        ChunkedUploadService restarted = service("", unconfigured.toString());
+        restarted.open();
+        restarted.shutdown();
+        assertEquals(node, ReflectionTestUtils.getField(restarted, "node"));
+        assertTrue(node.startsWith(LocalNode.hostName() + "-"));
+    }
+
+    private ChunkedUploadService service(String node, String uploadDir) {
+        ChunkedUploadService chunked = new ChunkedUploadService();
+        ReflectionTestUtils.setField(chunked, "uploadSessionRepository", sessionRepository);
+        ReflectionTestUtils.setField(chunked, "examRepository", examRepository);
+        ReflectionTestUtils.setField(chunked, "storedObjectService", storedObjectService);
+        ReflectionTestUtils.setField(chunked, "uploadOutbox", uploadOutbox);
+        ReflectionTestUtils.setField(chunked, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(chunked, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(chunked, "configuredNode", node);
+        ReflectionTestUtils.setField(chunked, "defaultChunkSize", (long) CHUNK);
+        ReflectionTestUtils.setField(chunked, "maxChunkSize", 4L * CHUNK);
+        ReflectionTestUtils.setField(chunked, "maxSize", 64L * CHUNK);
+        ReflectionTestUtils.setField(chunked, "expireHours", 24L);
+        ReflectionTestUtils.setField(chunked, "purgeIntervalMinutes", 60L);
+        return chunked;
+    }
+
+    private UploadSession create(long size, String sha256) throws Exception {
+        UploadSessionRequest request = new UploadSessionRequest();
+        request.setFileName("syllabus.pdf");
+        request.setSize(size);
+        request.setSha256(sha256);
+        return service.create(EXAM, request);
+    }
+
+    private void put(UploadSession session, int index, byte[] content) throws Exception {
+        int from = index * CHUNK;
+        byte[] body = Arrays.copyOfRange(content, from, Math.min(content.length, from + CHUNK));
+        service.putChunk(session, index, new ByteArrayInputStream(body), sha256(body));
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
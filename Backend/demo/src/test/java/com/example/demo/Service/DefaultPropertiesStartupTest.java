@@ -0,0 +1,72 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.Repository.ExamRepository;
+import com.example.demo.Repository.UploadSessionRepository;
+
+/**
+ * The services that keep files on local disk start with nothing but the
+ * shipped application.properties, with the temp dir pointed at a scratch
+ * directory.
+ */
+class DefaultPropertiesStartupTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void chunkedUploadsStartWithTheShippedDefaults() {
+        runner().withBean(ChunkedUploadService.class)
+                .withInitializer(context -> context.getBeanFactory()
+                        .registerSingleton("uploadOutbox", mock(UploadOutbox.class)))
+                .run(context -> {
+                    assertNull(context.getStartupFailure());
+                    assertTrue(Files.exists(tmp.resolve("chunked-uploads").resolve("node-id")));
+                });
+    }
+
+    @Test
+    void uploadOutboxStartsWithTheShippedDefaults() {
+        runner().withBean(UploadOutbox.class).run(context -> {
+            assertNull(context.getStartupFailure());
+            UploadOutbox outbox = context.getBean(UploadOutbox.class);
+            outbox.start();
+            try {
+                assertTrue(outbox.isRunning());
+                assertTrue(Files.exists(tmp.resolve("outbox").resolve("node-id")));
+            } finally {
+                outbox.shutdown();
+            }
+        });
+    }
+
+    private ApplicationContextRunner runner() {
+        return new ApplicationContextRunner()
+                .withInitializer(new ConfigDataApplicationContextInitializer())
+                .withSystemProperties("java.io.tmpdir=" + tmp)
+                .withInitializer(context -> {
+                    // Registered as finished objects: a mock's inherited @Autowired fields must not be injected
+                    ConfigurableListableBeanFactory beans = context.getBeanFactory();
+                    beans.registerSingleton("uploadSessionRepository", mock(UploadSessionRepository.class));
+                    beans.registerSingleton("examRepository", mock(ExamRepository.class));
+                    beans.registerSingleton("storedObjectService", mock(StoredObjectService.class));
+                    beans.registerSingleton("transactionTemplate", mock(TransactionTemplate.class));
+                    beans.registerSingleton("objectStorage", mock(ObjectStorage.class));
+                    beans.registerSingleton("jdbcTemplate", mock(JdbcTemplate.class));
+                });
+    }
+}
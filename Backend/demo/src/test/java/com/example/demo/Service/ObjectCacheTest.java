@@ -0,0 +1,130 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The download proxy's cache against a mocked storage: content-hash ETags,
+ * and files that stay on disk while a response still holds them.
+ */
+class ObjectCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectStorage storage = mock(ObjectStorage.class);
+
+    // Object path -> current content in "storage"
+    private final Map<String, String> stored = new ConcurrentHashMap<>();
+
+    @Test
+    void etagIsTheContentHash() throws Exception {
+        stored.put("docs/a.pdf", "first version");
+        ObjectCache cache = cache(1024, 1024);
+
+        String etag;
+        try (ObjectCache.CachedObject object = cache.get("docs/a.pdf")) {
+            etag = object.etag();
+            assertEquals(etagOf("first version"), etag);
+            assertArrayEquals("first version".getBytes(StandardCharsets.UTF_8), object.bytes());
+        }
+
+        // A restart re-adopts the file and hashes it again: same tag, no new fetch
+        try (ObjectCache.CachedObject object = cache(1024, 1024).get("docs/a.pdf")) {
+            assertEquals(etag, object.etag());
+        }
+        verify(storage, times(1)).open("docs/a.pdf");
+
+        stored.put("docs/a.pdf", "second version");
+        cache.invalidate("docs/a.pdf");
+        try (ObjectCache.CachedObject object = cache.get("docs/a.pdf")) {
+            assertNotEquals(etag, object.etag());
+            assertEquals(etagOf("second version"), object.etag());
+        }
+    }
+
+    @Test
+    void missingObjectsAreNull() throws Exception {
+        assertNull(cache(1024, 1024).get("docs/missing.pdf"));
+    }
+
+    @Test
+    void evictionSkipsFilesStillBeingSent() throws Exception {
+        stored.put("a.bin", "12345678");
+        stored.put("b.bin", "abcdefgh");
+        // Room for one 8-byte file on disk, none in memory
+        ObjectCache cache = cache(10, 0);
+
+        ObjectCache.CachedObject a = cache.get("a.bin");
+        ObjectCache.CachedObject b = cache.get("b.bin");
+        assertTrue(Files.exists(a.file()), "a is pinned, so b may not evict it");
+        assertTrue(Files.exists(b.file()));
+
+        a.close();
+        assertFalse(Files.exists(a.file()), "released, and the cache is over budget");
+        b.close();
+        assertTrue(Files.exists(b.file()));
+    }
+
+    @Test
+    void invalidatedFilesGoWhenReleased() throws Exception {
+        stored.put("a.bin", "12345678");
+        ObjectCache cache = cache(1024, 0);
+
+        ObjectCache.CachedObject a = cache.get("a.bin");
+        cache.invalidate("a.bin");
+        assertTrue(Files.exists(a.file()));
+        a.close();
+        assertFalse(Files.exists(a.file()));
+
+        // The next request fetches it again
+        try (ObjectCache.CachedObject again = cache.get("a.bin")) {
+            assertEquals("12345678", Files.readString(again.file()));
+        }
+        verify(storage, times(2)).open("a.bin");
+    }
+
+    private ObjectCache cache(long diskMaxBytes, long memoryMaxObjectBytes) throws Exception {
+        when(storage.open(anyString())).thenAnswer(invocation -> {
+            String content = stored.get(invocation.<String>getArgument(0));
+            return content == null ? null : new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        });
+        ObjectCache cache = new ObjectCache();
+        ReflectionTestUtils.setField(cache, "objectStorage", storage);
+        ReflectionTestUtils.setField(cache, "uploadOutbox", mock(UploadOutbox.class));
+        ReflectionTestUtils.setField(cache, "cacheDir", dir.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxBytes", diskMaxBytes);
+        ReflectionTestUtils.setField(cache, "memoryMaxBytes", 1024L);
+        ReflectionTestUtils.setField(cache, "memoryMaxObjectBytes", memoryMaxObjectBytes);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        cache.open();
+        return cache;
+    }
+
+    private static String etagOf(String content) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        return "\"" + HexFormat.of().formatHex(hash) + "\"";
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.FakeStorageServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the Supabase backend against an embedded FakeStorageServer: uploads,
+ * public reads, retries on injected 5xx answers and the circuit breaker.
+ * Needs no network access or database.
+ */
+class SupabaseObjectStorageTest {
+
+    private FakeStorageServer server;
+    private SupabaseObjectStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeStorageServer();
+        server.start();
+
+        storage = storage(3, 5);
+    }
+
+    // Bucket public URLs, 5 s timeouts, retries 1-5 ms apart, and a circuit that stays open for a minute
+    private SupabaseObjectStorage storage(int maxAttempts, int failureThreshold) {
+        return new SupabaseObjectStorage(server.baseUrl(), "test-key", "uploads", 2000,
+                new ObjectMapper(), "", 5000, 5000, maxAttempts, 1, 5, failureThreshold, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void uploadedObjectsCanBeReadBack() throws Exception {
+        byte[] content = "syllabus".getBytes(StandardCharsets.UTF_8);
+        storage.upload("syllabus/a.pdf", "application/pdf", content, false);
+        Path file = Files.writeString(Files.createTempFile("certificate-", ".pdf"), "from disk");
+        storage.upload("certificates/b.pdf", "application/pdf", file, false);
+        Files.delete(file);
+
+        try (InputStream in = storage.open("syllabus/a.pdf")) {
+            assertNotNull(in);
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals("from disk", Files.readString(server.objectFile("uploads", "certificates/b.pdf")));
+        assertNull(storage.open("syllabus/missing.pdf"));
+    }
+
+    @Test
+    void existsReportsStoredObjects() throws Exception {
+        storage.upload("certificates/jo/Maths.pdf", "application/pdf", new byte[] {1}, false);
+
+        assertTrue(storage.exists("certificates/jo/Maths.pdf"));
+        assertFalse(storage.exists("certificates/jo/Physics.pdf"));
+    }
+
+    @Test
+    void existingObjectsAreOnlyReplacedWithUpsert() throws Exception {
+        storage.upload("blog-images/a.png", "image/png", new byte[] {1}, false);
+
+        assertThrows(IOException.class, () -> storage.upload("blog-images/a.png", "image/png", new byte[] {2}, false));
+        storage.upload("blog-images/a.png", "image/png", new byte[] {3}, true);
+        assertArrayEquals(new byte[] {3}, Files.readAllBytes(server.objectFile("uploads", "blog-images/a.png")));
+    }
+
+    @Test
+    void fakeServerPutAlwaysReplaces() throws Exception {
+        storage.upload("blog-images/b.png", "image/png", new byte[] {1}, false);
+
+        // No client of ours sends PUT, but the fake must answer it like Supabase: no x-upsert needed
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                        URI.create(server.baseUrl() + "/storage/v1/object/uploads/blog-images/b.png"))
+                .header("Authorization", "Bearer test-key")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(new byte[] {2}))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertArrayEquals(new byte[] {2}, Files.readAllBytes(server.objectFile("uploads", "blog-images/b.png")));
+    }
+
+    @Test
+    void pathSegmentsAreEncoded() throws Exception {
+        String objectPath = "syllabus/Year 1/Maths #2 100%.pdf";
+        storage.upload(objectPath, "application/pdf", new byte[] {5}, false);
+
+        assertTrue(storage.publicUrl(objectPath).endsWith("/uploads/syllabus/Year%201/Maths%20%232%20100%25.pdf"));
+        assertTrue(storage.exists(objectPath));
+        try (InputStream in = storage.open(objectPath)) {
+            assertArrayEquals(new byte[] {5}, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void transientErrorsAreRetried() throws Exception {
+        server.failNext(2, 503);
+
+        storage.upload("syllabus/retried.pdf", "application/pdf", new byte[] {1, 2, 3}, true);
+
+        assertEquals(3, server.getRequests());
+        assertNotNull(server.objectFile("uploads", "syllabus/retried.pdf"));
+    }
+
+    @Test
+    void retryAfterLostAnswerIsNotADuplicate() throws Exception {
+        server.loseNextUploadResponses(1);
+
+        storage.upload("syllabus/lost.pdf", "application/pdf", new byte[] {4}, false);
+
+        assertEquals(2, server.getRequests());
+        assertArrayEquals(new byte[] {4}, Files.readAllBytes(server.objectFile("uploads", "syllabus/lost.pdf")));
+    }
+
+    @Test
+    void circuitOpensAfterRepeatedFailures() throws Exception {
+        storage = storage(1, 2);
+        server.failNext(2, 503);
+
+        assertThrows(IOException.class, () -> storage.upload("a.pdf", "application/pdf", new byte[] {1}, true));
+        assertThrows(IOException.class, () -> storage.upload("a.pdf", "application/pdf", new byte[] {1}, true));
+        assertThrows(SupabaseObjectStorage.StorageUnavailableException.class,
+                () -> storage.upload("a.pdf", "application/pdf", new byte[] {1}, true));
+        assertEquals(2, server.getRequests());
+    }
+}